@@ -0,0 +1,242 @@
+package visualsss.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Calls into the VisualSSS classes. They live in the default package, which cannot be
+ * imported from a named package (and JMH refuses benchmarks in the default package),
+ * so the handles are resolved once by name and reused on every invocation.
+ */
+final class Api {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Class<?> BMP_IMAGE = type("BmpImage");
+
+    private static final MethodHandle PERMUTE_ARRAY = findStatic("VisualSSS", "permuteArray",
+            MethodType.methodType(byte[].class, short.class, byte[].class));
+    private static final MethodHandle EMBED = findStatic("LsbSteganography", "embed",
+            MethodType.methodType(byte[].class, byte[].class, byte[].class));
+    private static final MethodHandle EXTRACT = findStatic("LsbSteganography", "extract",
+            MethodType.methodType(byte[].class, byte[].class, int.class));
+    private static final MethodHandle BMP_LOAD = findConstructor(BMP_IMAGE,
+            MethodType.methodType(void.class, String.class));
+    private static final MethodHandle BMP_MAP = findStatic("BmpImage", "map",
+            MethodType.methodType(BMP_IMAGE, String.class));
+    private static final MethodHandle BMP_PIXELS = findVirtual(BMP_IMAGE, "getPixelData",
+            MethodType.methodType(byte[].class));
+    private static final MethodHandle BMP_WIDTH = findVirtual(BMP_IMAGE, "getWidth",
+            MethodType.methodType(int.class));
+    private static final MethodHandle BMP_HEIGHT = findVirtual(BMP_IMAGE, "getHeight",
+            MethodType.methodType(int.class));
+    private static final MethodHandle BMP_SAVE = findVirtual(BMP_IMAGE, "save",
+            MethodType.methodType(void.class, String.class));
+    private static final MethodHandle DISTRIBUTOR = findConstructor(type("SecretDistributor"),
+            MethodType.methodType(void.class, byte[].class, int.class, int.class, int.class, int.class, BMP_IMAGE, String.class));
+    private static final MethodHandle DISTRIBUTE = findVirtual(type("SecretDistributor"), "distribute",
+            MethodType.methodType(void.class, int.class));
+    private static final MethodHandle RECOVERER = findConstructor(type("SecretRecoverer"),
+            MethodType.methodType(void.class, int.class, int.class, String.class));
+    private static final MethodHandle RECOVER = findVirtual(type("SecretRecoverer"), "recover",
+            MethodType.methodType(byte[].class));
+    private static final MethodHandle SET_SIMD = findStatic("Simd", "setEnabled",
+            MethodType.methodType(boolean.class, boolean.class));
+    private static final MethodHandle XOR_KEYSTREAM = findStatic("PermutationTable", "xorKeystream",
+            MethodType.methodType(void.class, int.class, int.class, long.class, byte[].class, int.class, int.class));
+    private static final MethodHandle EVALUATOR = findConstructor(type("PolynomialEvaluator"),
+            MethodType.methodType(void.class, int.class, int.class));
+    private static final MethodHandle EVALUATE_BLOCKS = findVirtual(type("PolynomialEvaluator"), "evaluateBlocks",
+            MethodType.methodType(void.class, byte[].class, int.class, int.class, byte[][].class));
+    private static final MethodHandle INVERT_VANDERMONDE = findStatic("Gf257", "invertVandermonde",
+            MethodType.methodType(void.class, int[].class, int[].class, int[].class));
+
+    private Api() {
+    }
+
+    static byte[] permuteArray(short seed, byte[] array) {
+        try {
+            return (byte[]) PERMUTE_ARRAY.invokeExact(seed, array);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static byte[] embed(byte[] carrier, byte[] data) {
+        try {
+            return (byte[]) EMBED.invokeExact(carrier, data);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static byte[] extract(byte[] carrier, int numBytes) {
+        try {
+            return (byte[]) EXTRACT.invokeExact(carrier, numBytes);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static Object loadBmp(String path) {
+        try {
+            return BMP_LOAD.invoke(path);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static Object mapBmp(String path) {
+        try {
+            return BMP_MAP.invoke(path);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static byte[] pixelData(Object bmp) {
+        try {
+            return (byte[]) BMP_PIXELS.invoke(bmp);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int width(Object bmp) {
+        try {
+            return (int) BMP_WIDTH.invoke(bmp);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int height(Object bmp) {
+        try {
+            return (int) BMP_HEIGHT.invoke(bmp);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void saveBmp(Object bmp, String path) {
+        try {
+            BMP_SAVE.invoke(bmp, path);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Distributes an already permuted secret; shadows are written to resources/sombras.
+     */
+    static void distribute(byte[] permutedSecret, int k, int n, Object secretImage, String carriersDir, int seed) {
+        try {
+            Object distributor = DISTRIBUTOR.invoke(permutedSecret, k, n, width(secretImage), height(secretImage),
+                    secretImage, carriersDir);
+            DISTRIBUTE.invoke(distributor, seed);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static byte[] recover(int k, int n, String shadowsDir) {
+        try {
+            Object recoverer = RECOVERER.invoke(k, n, shadowsDir);
+            return (byte[]) RECOVER.invoke(recoverer);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Switches the Vector API kernels on or off.
+     * @return Whether they are in use
+     */
+    static boolean setSimd(boolean on) {
+        try {
+            return (boolean) SET_SIMD.invokeExact(on);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void xorKeystream(int version, int seed, long position, byte[] data) {
+        try {
+            XOR_KEYSTREAM.invokeExact(version, seed, position, data, 0, data.length);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static Object newEvaluator(int k, int n) {
+        try {
+            return EVALUATOR.invoke(k, n);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Evaluates every block of the coefficients for every shadow.
+     */
+    static void evaluateBlocks(Object evaluator, byte[] coefficients, byte[][] values) {
+        try {
+            EVALUATE_BLOCKS.invoke(evaluator, coefficients, 0, values[0].length, values);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Inverts the Vandermonde matrix of the ids modulo 257 into the given buffers.
+     */
+    static void invertVandermonde(int[] ids, int[] work, int[] inverse) {
+        try {
+            INVERT_VANDERMONDE.invokeExact(ids, work, inverse);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("VisualSSS class not found: " + name, e);
+        }
+    }
+
+    private static MethodHandle findStatic(String owner, String name, MethodType type) {
+        try {
+            return LOOKUP.findStatic(type(owner), name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Method not found: " + owner + "." + name, e);
+        }
+    }
+
+    private static MethodHandle findVirtual(Class<?> owner, String name, MethodType type) {
+        try {
+            return LOOKUP.findVirtual(owner, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Method not found: " + owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> owner, MethodType type) {
+        try {
+            return LOOKUP.findConstructor(owner, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Constructor not found: " + owner.getName(), e);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
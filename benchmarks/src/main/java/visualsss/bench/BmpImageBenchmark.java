@@ -0,0 +1,67 @@
+package visualsss.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for loading, mapping and saving BMP images.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BmpImageBenchmark {
+
+    @Param({"synthetic-512", "synthetic-2048", Fixtures.IMAGENES_G7})
+    public String image;
+
+    private Path workDir;
+    private String path;
+    private String output;
+    private Object loaded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("visualsss-bench");
+        path = Fixtures.prepare(image, 1, workDir).secret.toString();
+        output = workDir.resolve("out.bmp").toString();
+        loaded = Api.loadBmp(path);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public Object load() {
+        return Api.loadBmp(path);
+    }
+
+    @Benchmark
+    public byte[] mapAndRead() {
+        return Api.pixelData(Api.mapBmp(path));
+    }
+
+    @Benchmark
+    public void save() {
+        Api.saveBmp(loaded, output);
+    }
+}
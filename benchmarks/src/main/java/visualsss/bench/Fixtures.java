@@ -0,0 +1,123 @@
+package visualsss.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Builds the images used by the benchmarks: synthetic 8-bit grayscale BMPs generated
+ * on the fly, or the resources/imagenesG7 set shipped with the repository.
+ */
+final class Fixtures {
+    static final String IMAGENES_G7 = "imagenesG7";
+    private static final String SYNTHETIC_PREFIX = "synthetic-";
+    private static final int HEADER_SIZE = 54;
+    private static final int PALETTE_SIZE = 256 * 4;
+
+    private Fixtures() {
+    }
+
+    /**
+     * A secret image and a directory with at least n carriers of the same size.
+     */
+    static final class ImageSet {
+        final Path secret;
+        final Path carriers;
+
+        ImageSet(Path secret, Path carriers) {
+            this.secret = secret;
+            this.carriers = carriers;
+        }
+    }
+
+    /**
+     * Prepares the images for the given parameter: "synthetic-SIDE" for a SIDE x SIDE
+     * random image, or "imagenesG7" for the repository images.
+     * @param image The image parameter
+     * @param n The number of carriers needed
+     * @param workDir A scratch directory for generated files
+     */
+    static ImageSet prepare(String image, int n, Path workDir) throws IOException {
+        if (IMAGENES_G7.equals(image)) {
+            Path dir = imagenesG7();
+            File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(".bmp"));
+            if (files == null || files.length < n) {
+                throw new IllegalStateException("imagenesG7 has fewer than " + n + " images");
+            }
+            return new ImageSet(files[0].toPath(), dir);
+        }
+        if (!image.startsWith(SYNTHETIC_PREFIX)) {
+            throw new IllegalArgumentException("Unknown image parameter: " + image);
+        }
+        int side = Integer.parseInt(image.substring(SYNTHETIC_PREFIX.length()));
+        Path carriers = Files.createDirectories(workDir.resolve("carriers"));
+        for (int i = 0; i < n; i++) {
+            Files.write(carriers.resolve("carrier" + i + ".bmp"), grayscaleBmp(side, side, 1000 + i));
+        }
+        Path secret = workDir.resolve("secret.bmp");
+        Files.write(secret, grayscaleBmp(side, side, 42));
+        return new ImageSet(secret, carriers);
+    }
+
+    /**
+     * Generates an 8-bit grayscale BMP with random pixels.
+     */
+    static byte[] grayscaleBmp(int width, int height, long seed) {
+        int rowSize = ((width + 3) / 4) * 4;
+        int pixelBytes = rowSize * height;
+        int offset = HEADER_SIZE + PALETTE_SIZE;
+        ByteBuffer bmp = ByteBuffer.allocate(offset + pixelBytes).order(ByteOrder.LITTLE_ENDIAN);
+        bmp.put((byte) 'B').put((byte) 'M').putInt(offset + pixelBytes).putInt(0).putInt(offset);
+        bmp.putInt(40).putInt(width).putInt(height).putShort((short) 1).putShort((short) 8)
+                .putInt(0).putInt(pixelBytes).putInt(2835).putInt(2835).putInt(256).putInt(0);
+        for (int i = 0; i < 256; i++) {
+            bmp.put((byte) i).put((byte) i).put((byte) i).put((byte) 0);
+        }
+        byte[] pixels = new byte[pixelBytes];
+        new Random(seed).nextBytes(pixels);
+        bmp.put(pixels);
+        return bmp.array();
+    }
+
+    /**
+     * Empties resources/sombras (relative to the working directory), where the shadows are written.
+     */
+    static Path cleanShadowsDir() throws IOException {
+        Path dir = Files.createDirectories(Paths.get("resources", "sombras"));
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Files.delete(f);
+            }
+        }
+        return dir;
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(f);
+            }
+        }
+    }
+
+    private static Path imagenesG7() {
+        Path cwd = Paths.get("").toAbsolutePath();
+        for (Path p = cwd; p != null; p = p.getParent()) {
+            Path candidate = p.resolve(Paths.get("resources", "imagenesG7"));
+            if (Files.isDirectory(candidate)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("resources/imagenesG7 not found from " + cwd);
+    }
+}
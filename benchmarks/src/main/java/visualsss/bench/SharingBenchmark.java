@@ -0,0 +1,118 @@
+package visualsss.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the sharing pipeline: permutation, distribution, recovery and LSB embedding,
+ * parameterized by image, k and n.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SharingBenchmark {
+    private static final short SEED = 4242;
+
+    @Param({"synthetic-512", "synthetic-2048", Fixtures.IMAGENES_G7})
+    public String image;
+
+    @Param({"2", "4", "8"})
+    public int k;
+
+    @Param({"8"})
+    public int n;
+
+    private Path workDir;
+    private Fixtures.ImageSet images;
+    private Object secretImage;
+    private byte[] secretPixels;
+    private byte[] permuted;
+    private byte[] payload;
+    private byte[] carrierPixels;
+    private byte[] embedded;
+    private int[] ids;
+    private int[] work;
+    private int[] inverse;
+    private String shadowsDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("visualsss-bench");
+        images = Fixtures.prepare(image, n, workDir);
+        secretImage = Api.loadBmp(images.secret.toString());
+        secretPixels = Api.pixelData(secretImage);
+        permuted = Api.permuteArray(SEED, secretPixels);
+
+        // LSB payload: one byte per polynomial, as in a real shadow
+        payload = new byte[secretPixels.length / k];
+        System.arraycopy(permuted, 0, payload, 0, payload.length);
+        carrierPixels = Api.pixelData(Api.loadBmp(images.secret.toString()));
+        embedded = Api.embed(carrierPixels, payload);
+
+        ids = new int[k];
+        for (int i = 0; i < k; i++) {
+            ids[i] = i + 1;
+        }
+        work = new int[2 * k * k];
+        inverse = new int[k * k];
+
+        // Shadows for the recovery benchmark
+        shadowsDir = Fixtures.cleanShadowsDir().toString();
+        Api.distribute(permuted.clone(), k, n, secretImage, images.carriers.toString(), SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public byte[] permuteArray() {
+        return Api.permuteArray(SEED, secretPixels);
+    }
+
+    @Benchmark
+    public void distribute() {
+        // distribute adjusts coefficients in place, so every call gets a fresh copy
+        Api.distribute(permuted.clone(), k, n, secretImage, images.carriers.toString(), SEED);
+    }
+
+    @Benchmark
+    public byte[] recover() {
+        return Api.recover(k, n, shadowsDir);
+    }
+
+    @Benchmark
+    public int[] invertVandermonde() {
+        Api.invertVandermonde(ids, work, inverse);
+        return inverse;
+    }
+
+    @Benchmark
+    public byte[] lsbEmbed() {
+        return Api.embed(carrierPixels, payload);
+    }
+
+    @Benchmark
+    public byte[] lsbExtract() {
+        return Api.extract(embedded, payload.length);
+    }
+}
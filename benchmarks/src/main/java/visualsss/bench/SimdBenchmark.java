@@ -0,0 +1,95 @@
+package visualsss.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A/B comparison of the Vector API kernels and the scalar code on the same buffers:
+ * counter keystream XOR, legacy table XOR, LSB embedding and batched GF(257) evaluation.
+ * simd=true needs the kernels compiled in (-Psimd) and the JVM started with
+ * --add-modules jdk.incubator.vector, which the forks inherit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimdBenchmark {
+    private static final short SEED = 4242;
+
+    // Scalar only by default, so the full suite also runs on the default build; the SIMD run passes -p simd=false,true
+    @Param({"false"})
+    public boolean simd;
+
+    @Param({"1048576", "16777216"})
+    public int bytes;
+
+    @Param({"4", "8"})
+    public int k;
+
+    @Param({"8"})
+    public int n;
+
+    private byte[] secret;
+    private byte[] data;
+    private byte[] carrier;
+    private byte[] payload;
+    private byte[] coefficients;
+    private byte[][] values;
+    private Object evaluator;
+
+    @Setup
+    public void setUp() {
+        if (Api.setSimd(simd) != simd) {
+            throw new IllegalStateException("Vector kernels not available: build with -Psimd and run with --add-modules jdk.incubator.vector");
+        }
+        Random random = new Random(SEED);
+        secret = new byte[bytes - bytes % k];
+        random.nextBytes(secret);
+        data = secret.clone();
+        payload = new byte[secret.length / k];
+        random.nextBytes(payload);
+        carrier = new byte[payload.length * 8];
+        random.nextBytes(carrier);
+        coefficients = secret.clone();
+        values = new byte[n][secret.length / k];
+        evaluator = Api.newEvaluator(k, n);
+    }
+
+    @Benchmark
+    public byte[] counterKeystream() {
+        // XOR is its own inverse, so the buffer does not need resetting between calls
+        Api.xorKeystream(1, SEED, 0, data);
+        return data;
+    }
+
+    @Benchmark
+    public byte[] legacyPermute() {
+        return Api.permuteArray(SEED, secret);
+    }
+
+    @Benchmark
+    public byte[] lsbEmbed() {
+        return Api.embed(carrier, payload);
+    }
+
+    @Benchmark
+    public byte[][] evaluate() {
+        // Adjusted blocks stay adjusted, so later calls evaluate the same coefficients
+        Api.evaluateBlocks(evaluator, coefficients, values);
+        return values;
+    }
+}
@@ -0,0 +1,154 @@
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels of {@link Simd}. Compile and run with {@code --add-modules jdk.incubator.vector};
+ * the species are resolved when the class is initialized, so a JVM without the module fails
+ * to load it and {@link Simd} keeps the scalar code.
+ */
+public final class VectorKernels implements Simd.Kernels {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Bytes with one lane per int or long lane, to load and store them; null if no shape is that small
+    private static final VectorSpecies<Byte> BYTES_POR_INT = especieDeBytes(INTS.length());
+    private static final VectorSpecies<Byte> BYTES_POR_LONG = especieDeBytes(LONGS.length());
+    // Same constants as PermutationTable.word and PermutationTable.mix64
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final long MIX1 = 0xbf58476d1ce4e5b9L;
+    private static final long MIX2 = 0x94d049bb133111ebL;
+    private static final int MOD = 257;
+    // Same as LsbSteganography: a multiply spreads the 8 bits of a byte to the LSBs of a word
+    private static final long LSB_MASK = 0x0101010101010101L;
+    private static final long SPREAD_MULTIPLIER = 0x8040201008040201L;
+
+    private static VectorSpecies<Byte> especieDeBytes(int lanes) {
+        int bits = lanes * 8;
+        return bits >= 64 ? VectorSpecies.of(byte.class, VectorShape.forBitSize(bits)) : null;
+    }
+
+    @Override
+    public String name() {
+        return "vector (" + LONGS.vectorShape() + ")";
+    }
+
+    @Override
+    public void xor(byte[] a, int aOffset, byte[] b, int bOffset, byte[] dest, int destOffset, int length) {
+        int i = 0;
+        for (int limite = BYTES.loopBound(length); i < limite; i += BYTES.length()) {
+            ByteVector.fromArray(BYTES, a, aOffset + i)
+                    .lanewise(VectorOperators.XOR, ByteVector.fromArray(BYTES, b, bOffset + i))
+                    .intoArray(dest, destOffset + i);
+        }
+        for (; i < length; i++) {
+            dest[destOffset + i] = (byte) (a[aOffset + i] ^ b[bOffset + i]);
+        }
+    }
+
+    @Override
+    public int xorCounterWords(long base, long index, byte[] data, int offset, int words) {
+        int lanes = LONGS.length();
+        LongVector iota = LongVector.zero(LONGS).addIndex(1);
+        int w = 0;
+        for (int limite = LONGS.loopBound(words); w < limite; w += lanes) {
+            // mix64(base + (index + 1) * GOLDEN_GAMMA) for index .. index + lanes - 1
+            LongVector z = iota.add(index + w + 1).mul(GOLDEN_GAMMA).add(base);
+            z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 30)).mul(MIX1);
+            z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 27)).mul(MIX2);
+            z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 31));
+            int posicion = offset + w * 8;
+            LongVector.fromByteArray(LONGS, data, posicion, ByteOrder.LITTLE_ENDIAN)
+                    .lanewise(VectorOperators.XOR, z)
+                    .intoByteArray(data, posicion, ByteOrder.LITTLE_ENDIAN);
+        }
+        return w;
+    }
+
+    @Override
+    public int embedFirstPlane(byte[] carrier, byte[] data, int numBytes) {
+        if (BYTES_POR_LONG == null) {
+            return 0;
+        }
+        int lanes = LONGS.length();
+        int i = 0;
+        for (; i + lanes <= numBytes; i += lanes) {
+            // Lane l: the 8 carrier bytes of payload byte i + l, as in LsbSteganography.SPREAD
+            LongVector valor = ((LongVector) ByteVector.fromArray(BYTES_POR_LONG, data, i)
+                    .convertShape(VectorOperators.B2L, LONGS, 0))
+                    .lanewise(VectorOperators.AND, 0xFF);
+            LongVector bits = valor.mul(SPREAD_MULTIPLIER)
+                    .lanewise(VectorOperators.LSHR, 7)
+                    .lanewise(VectorOperators.AND, LSB_MASK);
+            int base = i << 3;
+            LongVector.fromByteArray(LONGS, carrier, base, ByteOrder.LITTLE_ENDIAN)
+                    .lanewise(VectorOperators.AND, ~LSB_MASK)
+                    .lanewise(VectorOperators.OR, bits)
+                    .intoByteArray(carrier, base, ByteOrder.LITTLE_ENDIAN);
+        }
+        return i;
+    }
+
+    @Override
+    public int evaluateGf257(byte[] coeficientes, int k, int[][] potencias, int desde, int hasta, byte[][] valores, int[] pendientes) {
+        int lanes = INTS.length();
+        int n = potencias.length;
+        int cantidad = 0;
+        if (BYTES_POR_INT == null) {
+            for (int j = desde; j < hasta; j++) {
+                pendientes[cantidad++] = j;
+            }
+            return cantidad;
+        }
+        // Coefficients of a group of blocks, transposed: columnas[i * lanes + l] is coefficient i of block j + l
+        int[] columnas = new int[k * lanes];
+        int j = desde;
+        for (; j + lanes <= hasta; j += lanes) {
+            for (int l = 0; l < lanes; l++) {
+                int bloque = (j + l) * k;
+                for (int i = 0; i < k; i++) {
+                    columnas[i * lanes + l] = coeficientes[bloque + i] & 0xFF;
+                }
+            }
+            VectorMask<Integer> con256 = INTS.maskAll(false);
+            for (int s = 0; s < n; s++) {
+                int[] p = potencias[s];
+                // Below 16 * 255 * 256, so a single lazy reduction at the end
+                IntVector acc = IntVector.fromArray(INTS, columnas, 0).mul(p[0]);
+                for (int i = 1; i < k; i++) {
+                    acc = acc.add(IntVector.fromArray(INTS, columnas, i * lanes).mul(p[i]));
+                }
+                IntVector valor = reducir(acc);
+                con256 = con256.or(valor.compare(VectorOperators.EQ, 256));
+                valor.convertShape(VectorOperators.I2B, BYTES_POR_INT, 0).reinterpretAsBytes().intoArray(valores[s], j);
+            }
+            // Rare (about n / 257 of the blocks), so the mask is only turned into bits when needed
+            long ajustar = con256.anyTrue() ? con256.toLong() : 0;
+            while (ajustar != 0) {
+                pendientes[cantidad++] = j + Long.numberOfTrailingZeros(ajustar);
+                ajustar &= ajustar - 1;
+            }
+        }
+        for (; j < hasta; j++) {
+            pendientes[cantidad++] = j;
+        }
+        return cantidad;
+    }
+
+    /**
+     * Reduces lanes below 2^20 modulo 257: 256 = -1, so a * 256 + b = b - a, twice.
+     */
+    private static IntVector reducir(IntVector x) {
+        IntVector t = x.lanewise(VectorOperators.AND, 0xFF)
+                .sub(x.lanewise(VectorOperators.LSHR, 8))
+                .add(16 * MOD);
+        t = t.lanewise(VectorOperators.AND, 0xFF).sub(t.lanewise(VectorOperators.LSHR, 8));
+        return t.add(MOD, t.compare(VectorOperators.LT, 0));
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Distributes many secrets in a single run. Every secret gets its own seed and its own
+ * output directory (outputBase/secretName), the carriers are read once through a shared
+ * {@link CarrierCache}, and secrets are processed concurrently on a bounded pool of workers.
+ */
+public class BatchDistributor {
+    private final List<String> secrets;
+    private final int k;
+    private final int n;
+    private final String dir;
+    private final String outputBase;
+    private final int workers;
+    private final int permutationVersion;
+    private int field = PolynomialEvaluator.FIELD_GF257;
+    private boolean contenedores;
+    private boolean comprimir;
+    private CarrierCache carrierCache = new CarrierCache();
+
+    /**
+     * The outcome of distributing one secret.
+     */
+    public static class Resultado {
+        private final String secret;
+        private final String outputDir;
+        private final long millis;
+        private final Exception error;
+
+        Resultado(String secret, String outputDir, long millis, Exception error) {
+            this.secret = secret;
+            this.outputDir = outputDir;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public String getOutputDir() {
+            return outputDir;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return The error that stopped this secret, or null if it was distributed
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Constructs a BatchDistributor.
+     * @param secrets The paths of the secret BMP images
+     * @param k The threshold for recovery
+     * @param n The number of shares to create for each secret
+     * @param dir The directory containing the carrier images
+     * @param outputBase The directory under which each secret gets its shadow directory
+     * @param workers The number of secrets distributed at the same time
+     * @param permutationVersion The permutation table version
+     */
+    public BatchDistributor(List<String> secrets, int k, int n, String dir, String outputBase, int workers, int permutationVersion) {
+        if (secrets.isEmpty()) {
+            throw new IllegalArgumentException("No se encontraron secretos para distribuir.");
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("La cantidad de workers debe ser al menos 1.");
+        }
+        PermutationTable.checkVersion(permutationVersion);
+        // Each secret writes to <outputBase>/<name>, so two secrets with the same name would overwrite each other
+        Map<String, String> salidas = new HashMap<>();
+        for (String secret : secrets) {
+            String anterior = salidas.putIfAbsent(nombreDeSalida(secret).toLowerCase(Locale.ROOT), secret);
+            if (anterior != null) {
+                throw new IllegalArgumentException("Los secretos " + anterior + " y " + secret +
+                        " tienen el mismo nombre y se guardarían en el mismo directorio de salida.");
+            }
+        }
+        this.secrets = secrets;
+        this.k = k;
+        this.n = n;
+        this.dir = dir;
+        this.outputBase = outputBase;
+        this.workers = workers;
+        this.permutationVersion = permutationVersion;
+    }
+
+    /**
+     * Sets the carrier cache shared by the distributions of this batch
+     * (a new one with the default budget if not set).
+     * @param carrierCache The carrier cache
+     */
+    public void setCarrierCache(CarrierCache carrierCache) {
+        this.carrierCache = carrierCache;
+    }
+
+    public CarrierCache getCarrierCache() {
+        return carrierCache;
+    }
+
+    /**
+     * Sets the field every secret of the batch is shared over (GF(257) by default).
+     * @param field The field id, see {@link PolynomialEvaluator#FIELD_GF257}
+     */
+    public void setField(int field) {
+        PolynomialEvaluator.checkField(field);
+        this.field = field;
+    }
+
+    /**
+     * Saves the shadows of every secret as {@link ShareContainer} files instead of carrier BMPs.
+     * @param enabled Whether to save containers
+     * @param compress Whether to deflate the shares of each container in blocks
+     */
+    public void setContainerOutput(boolean enabled, boolean compress) {
+        this.contenedores = enabled;
+        this.comprimir = compress;
+    }
+
+    /**
+     * Expands a batch specification into secret paths: a directory (all its .bmp files),
+     * a glob such as resources/secretos/*.bmp, or a comma separated list of files.
+     * @param spec The batch specification
+     * @return The secret paths, sorted for directories and globs
+     * @throws IOException If a directory cannot be read
+     */
+    public static List<String> expandSecrets(String spec) throws IOException {
+        List<String> result = new ArrayList<>();
+        File asDir = new File(spec);
+        if (asDir.isDirectory()) {
+            File[] archivos = asDir.listFiles((d, name) -> name.toLowerCase().endsWith(".bmp"));
+            if (archivos == null) {
+                throw new IOException("No se puede leer el directorio: " + spec);
+            }
+            Arrays.sort(archivos);
+            for (File f : archivos) {
+                result.add(f.getPath());
+            }
+        } else if (spec.contains("*") || spec.contains("?") || spec.contains("[")) {
+            Path pattern = Paths.get(spec);
+            Path parent = pattern.getParent() != null ? pattern.getParent() : Paths.get(".");
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.getFileName());
+            File[] archivos = parent.toFile().listFiles(f -> f.isFile() && matcher.matches(f.toPath().getFileName()));
+            if (archivos == null) {
+                throw new IOException("No se puede leer el directorio: " + parent);
+            }
+            Arrays.sort(archivos);
+            for (File f : archivos) {
+                result.add(f.getPath());
+            }
+        } else {
+            for (String s : spec.split(",")) {
+                if (!s.trim().isEmpty()) {
+                    result.add(s.trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Distributes every secret. A failing secret does not stop the others.
+     * @return One result per secret, in the same order as the secrets
+     * @throws InterruptedException If the run is interrupted
+     */
+    public List<Resultado> run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Resultado>> futures = new ArrayList<>();
+            for (String secret : secrets) {
+                futures.add(pool.submit(() -> distribuir(secret)));
+            }
+            List<Resultado> resultados = new ArrayList<>();
+            for (Future<Resultado> future : futures) {
+                try {
+                    resultados.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Error inesperado en la distribución por lotes", e.getCause());
+                }
+            }
+            return resultados;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return The name of the shadow directory of a secret: its file name without the extension
+     */
+    private static String nombreDeSalida(String secret) {
+        String nombre = new File(secret).getName();
+        return nombre.toLowerCase(Locale.ROOT).endsWith(".bmp") ? nombre.substring(0, nombre.length() - ".bmp".length()) : nombre;
+    }
+
+    private Resultado distribuir(String secret) {
+        long inicio = System.nanoTime();
+        File salida = new File(outputBase, nombreDeSalida(secret));
+        try {
+            distribuirSecreto(secret, salida, k, n, dir, permutationVersion, field, contenedores, comprimir, 1, carrierCache,
+                    new PhaseStats("distribute"));
+            return new Resultado(secret, salida.getPath(), (System.nanoTime() - inicio) / 1_000_000, null);
+        } catch (Exception e) {
+            return new Resultado(secret, salida.getPath(), (System.nanoTime() - inicio) / 1_000_000, e);
+        }
+    }
+
+    /**
+     * Distributes one secret into the given directory with a new seed, replacing the shadows
+     * that were there. The parameters and the carriers are checked first, and the shadows are
+     * written to a temporary directory inside salida that only replaces the old shadows once the
+     * distribution succeeded, so a rejected or failed job leaves the previous shadows as they were.
+     * @param secret The path of the secret BMP image
+     * @param salida The directory for the shadows, created if needed
+     * @param k The threshold for recovery
+     * @param n The number of shares to create
+     * @param dir The directory containing the carrier images
+     * @param permutationVersion The permutation table version
+     * @param field The field to share over, see {@link PolynomialEvaluator#FIELD_GF257}
+     * @param contenedores Whether to save {@link ShareContainer} files instead of carrier BMPs
+     * @param comprimir Whether to deflate the shares of the containers
+     * @param threads The number of worker threads for this secret
+     * @param carrierCache The carrier cache, or null to read the carriers directly
+     * @param stats The stats to record the phases into
+     * @return The seed used for the permutation
+     * @throws Exception If there is an error during distribution
+     */
+    @SuppressWarnings("try")
+    static short distribuirSecreto(String secret, File salida, int k, int n, String dir, int permutationVersion,
+                                   int field, boolean contenedores, boolean comprimir, int threads, CarrierCache carrierCache,
+                                   PhaseStats stats) throws Exception {
+        if (!secret.toLowerCase().endsWith(".bmp")) {
+            throw new IllegalArgumentException("El archivo secreto debe tener extensión .bmp");
+        }
+        BmpImage secretImage;
+        try (PhaseStats.Timer t = stats.start("loadSecret")) {
+            secretImage = new BmpImage(secret);
+        }
+        short seed = VisualSSS.generateSeed();
+        byte[] permutedSecret;
+        try (PhaseStats.Timer t = stats.start("permute")) {
+            permutedSecret = VisualSSS.permuteArray(seed, secretImage.getPixelData(), permutationVersion, threads);
+        }
+        // The constructor checks k, n and the secret size; the carriers are checked before the output is touched
+        SecretDistributor distributor = new SecretDistributor(permutedSecret, k, n,
+                secretImage.getWidth(), secretImage.getHeight(), secretImage, dir);
+        distributor.setPermutationVersion(permutationVersion);
+        distributor.setField(field);
+        distributor.setSessionId(ShadowDigest.newSessionId());
+        distributor.setCarrierCache(carrierCache);
+        distributor.setContainerOutput(contenedores, comprimir);
+        distributor.setStats(stats);
+        distributor.checkCarriers();
+
+        if (!salida.isDirectory() && !salida.mkdirs()) {
+            throw new IOException("No se pudo crear el directorio de salida: " + salida);
+        }
+        File temporal = Files.createTempDirectory(salida.toPath(), ".sombras-").toFile();
+        try {
+            distributor.setOutputDir(temporal.getPath());
+            distributor.distribute(seed, threads);
+            reemplazarSombras(temporal, salida);
+        } finally {
+            borrar(temporal);
+        }
+        return seed;
+    }
+
+    /**
+     * Deletes the old shadows (BMPs and containers) of salida and moves the new ones from temporal in their place.
+     * Both directories are on the same file system, so every move is a rename.
+     */
+    private static void reemplazarSombras(File temporal, File salida) throws IOException {
+        File[] nuevas = temporal.listFiles();
+        if (nuevas == null) {
+            throw new IOException("No se puede leer el directorio: " + temporal);
+        }
+        File[] oldShadows = salida.listFiles((d, name) -> name.startsWith("sombra")
+                && (name.endsWith(".bmp") || ShareContainer.isContainer(name)));
+        if (oldShadows != null) {
+            for (File f : oldShadows) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+        for (File f : nuevas) {
+            Files.move(f.toPath(), new File(salida, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void borrar(File temporal) {
+        File[] restantes = temporal.listFiles();
+        if (restantes != null) {
+            for (File f : restantes) {
+                f.delete();
+            }
+        }
+        temporal.delete();
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+/**
+ * Berlekamp-Welch decoder over GF(257): recovers the polynomial of degree less than k from
+ * its values at m shadow ids when at most (m - k) / 2 of them are wrong, and tells which ones.
+ * It solves Q(x_i) = y_i * E(x_i) for Q of degree less than e + k and a monic error locator E
+ * of degree e, and divides Q by E.
+ * <p>
+ * An instance keeps its flat work matrix, eliminated in place by {@link Gf257#eliminate}, so
+ * decoding a block does not allocate; it is not thread-safe.
+ */
+class BerlekampWelch {
+    private final int k;
+    private final int m;
+    private final int e;
+    private final int[][] potencias;
+    private final int columnas;
+    private final int[] sistema;
+    private final int[] solucion;
+    private final int[] columnaPivote;
+    private final int[] cociente;
+
+    /**
+     * Constructs a decoder for the given shadow ids.
+     * @param ids The shadow ids (distinct, between 1 and 256)
+     * @param k The number of coefficients of the polynomials
+     */
+    BerlekampWelch(int[] ids, int k) {
+        if (ids.length < k) {
+            throw new IllegalArgumentException("Se necesitan al menos k sombras para decodificar.");
+        }
+        this.k = k;
+        this.m = ids.length;
+        this.e = (m - k) / 2;
+        this.potencias = new int[m][e + k + 1];
+        for (int i = 0; i < m; i++) {
+            int p = 1;
+            for (int t = 0; t <= e + k; t++) {
+                potencias[i][t] = p;
+                p = Gf257.reduce(p * ids[i]);
+            }
+        }
+        this.columnas = 2 * e + k + 1;
+        this.sistema = new int[m * columnas];
+        this.solucion = new int[columnas - 1];
+        this.columnaPivote = new int[m];
+        this.cociente = new int[k];
+    }
+
+    /**
+     * @return The number of wrong values that can be corrected in one block
+     */
+    int getMaxErrors() {
+        return e;
+    }
+
+    /**
+     * Decodes one block.
+     * @param y The values of the m shadows, between 0 and 255
+     * @param coef Receives the k coefficients of the polynomial
+     * @param erroneas If not null, receives which shadows had a wrong value
+     * @return The number of wrong values, or -1 if there are more than can be corrected
+     */
+    int decode(int[] y, int[] coef, boolean[] erroneas) {
+        int incognitas = columnas - 1;
+        // Unknowns: Q_0..Q_{e+k-1}, then E_0..E_{e-1}; E_e = 1
+        for (int i = 0; i < m; i++) {
+            int fila = i * columnas;
+            int[] p = potencias[i];
+            System.arraycopy(p, 0, sistema, fila, e + k);
+            for (int t = 0; t < e; t++) {
+                sistema[fila + e + k + t] = Gf257.subMul(0, y[i], p[t]);
+            }
+            sistema[fila + incognitas] = Gf257.mul(y[i], p[e]);
+        }
+        if (!resolver(incognitas)) {
+            return -1;
+        }
+        // Q / E, with E monic of degree e: the remainder must be zero
+        int[] q = solucion;
+        for (int grado = e + k - 1; grado >= e; grado--) {
+            int c = q[grado];
+            cociente[grado - e] = c;
+            if (c != 0) {
+                for (int t = 0; t < e; t++) {
+                    int posicion = grado - e + t;
+                    q[posicion] = Gf257.subMul(q[posicion], c, q[e + k + t]);
+                }
+            }
+        }
+        for (int t = 0; t < e; t++) {
+            if (q[t] != 0) {
+                return -1;
+            }
+        }
+        int errores = 0;
+        for (int i = 0; i < m; i++) {
+            int valor = 0;
+            for (int t = k - 1; t >= 0; t--) {
+                valor = Gf257.reduce(valor * potencias[i][1] + cociente[t]);
+            }
+            boolean erronea = valor != y[i];
+            if (erronea) {
+                errores++;
+            }
+            if (erroneas != null) {
+                erroneas[i] = erronea;
+            }
+        }
+        if (errores > e) {
+            return -1;
+        }
+        System.arraycopy(cociente, 0, coef, 0, k);
+        return errores;
+    }
+
+    /**
+     * Gauss-Jordan elimination of the m x (incognitas + 1) system, in place; free unknowns are set to 0.
+     * @return false if the system has no solution
+     */
+    private boolean resolver(int incognitas) {
+        int filas = Gf257.eliminate(sistema, m, columnas, incognitas, columnaPivote);
+        for (int r = filas; r < m; r++) {
+            if (sistema[r * columnas + incognitas] != 0) {
+                return false;
+            }
+        }
+        Arrays.fill(solucion, 0);
+        for (int r = 0; r < filas; r++) {
+            solucion[columnaPivote[r]] = sistema[r * columnas + incognitas];
+        }
+        return true;
+    }
+}
@@ -1,27 +1,97 @@
 import java.io.*;
-import java.nio.file.Files;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class BmpImage {
+    private static final int OFFSET_POSITION = 10;
+
     private byte[] header;
     private byte[] pixelData;
     private int offset;
+    // Read-only view of the pixel data when the image is memory mapped (pixelData is then loaded lazily)
+    private ByteBuffer mappedPixels;
 
     public BmpImage(String path) throws IOException {
-        byte[] fullData = Files.readAllBytes(new File(path).toPath());
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            readHeader(channel);
+            long size = channel.size() - offset;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("La imagen es demasiado grande: " + path);
+            }
+            // Read the pixel data straight into its own array, without intermediate copies
+            pixelData = new byte[(int) size];
+            readFully(channel, ByteBuffer.wrap(pixelData), offset);
+        }
+    }
+
+    private BmpImage() {
+    }
+
+    /**
+     * Opens a BMP image backed by a read-only memory mapping of the file.
+     * Only the header is copied to the heap; the pixel data is exposed through
+     * {@link #getPixelBuffer()} without copies and is only loaded if {@link #getPixelData()} is called.
+     * @param path The path of the BMP file
+     * @return The mapped image
+     * @throws IOException If the file cannot be read or is not an 8, 24 or 32-bit BMP
+     */
+    public static BmpImage map(String path) throws IOException {
+        BmpImage image = new BmpImage();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            image.readHeader(channel);
+            image.mappedPixels = channel.map(FileChannel.MapMode.READ_ONLY, image.offset, channel.size() - image.offset);
+        }
+        return image;
+    }
+
+    /**
+     * Reads only the header of a BMP image (up to the pixel data offset).
+     * @param path The path of the BMP file
+     * @return The header bytes
+     * @throws IOException If the file cannot be read or is not an 8, 24 or 32-bit BMP
+     */
+    public static byte[] readHeader(String path) throws IOException {
+        BmpImage image = new BmpImage();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            image.readHeader(channel);
+        }
+        return image.header;
+    }
 
-        // Leer offset al comienzo de los datos (bytes 10–13)
-        offset = ((fullData[13] & 0xFF) << 24) | ((fullData[12] & 0xFF) << 16) |
-                ((fullData[11] & 0xFF) << 8) | (fullData[10] & 0xFF);
+    /**
+     * Reads the header (up to the pixel data offset) and validates the image depth.
+     */
+    private void readHeader(FileChannel channel) throws IOException {
+        // Leer offset al comienzo de los datos (bytes 10-13)
+        ByteBuffer prefix = ByteBuffer.allocate(OFFSET_POSITION + 4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, prefix, 0);
+        offset = prefix.getInt(OFFSET_POSITION);
+        if (offset <= 28 || offset > channel.size()) {
+            throw new IOException("Offset de datos inválido en el header BMP: " + offset);
+        }
 
-        header = Arrays.copyOfRange(fullData, 0, offset);
+        header = new byte[offset];
+        readFully(channel, ByteBuffer.wrap(header), 0);
 
-        // Check if the image is RGB or grayscale: byte 28 of the header should be 8
-        if (header[28] != 8) {
-            throw new IOException("The image is not grayscale");
+        // Bits per pixel (bytes 28-29): 8 (grayscale with palette), 24 (BGR) or 32 (BGRA)
+        int bits = (header[28] & 0xFF) | ((header[29] & 0xFF) << 8);
+        if (bits != 8 && bits != 24 && bits != 32) {
+            throw new IOException("Solo se admiten imágenes BMP de 8, 24 o 32 bits por píxel (la imagen tiene " + bits + ")");
         }
+    }
 
-        pixelData = Arrays.copyOfRange(fullData, offset, fullData.length);
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Archivo BMP truncado");
+            }
+            position += read;
+        }
     }
 
     public BmpImage(byte[] header, byte[] pixelData) {
@@ -31,9 +101,40 @@ public class BmpImage {
     }
 
     public byte[] getPixelData() {
+        if (pixelData == null && mappedPixels != null) {
+            pixelData = new byte[mappedPixels.capacity()];
+            mappedPixels.duplicate().get(pixelData);
+        }
         return pixelData;
     }
 
+    /**
+     * Returns a read-only little endian view of the pixel data, without copying it.
+     * @return The pixel data buffer, positioned at 0
+     */
+    public ByteBuffer getPixelBuffer() {
+        ByteBuffer buffer = (pixelData != null) ? ByteBuffer.wrap(pixelData).asReadOnlyBuffer() : mappedPixels.duplicate();
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads the pages of a mapped image into memory, so that later reads of the pixel data
+     * do not wait for the disk. Does nothing if the pixel data is already on the heap.
+     */
+    public void load() {
+        if (mappedPixels instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) mappedPixels).load();
+        }
+    }
+
+    /**
+     * Returns the number of pixel data bytes, without loading a mapped image.
+     * @return The length of the pixel data
+     */
+    public int getPixelDataLength() {
+        return (pixelData != null) ? pixelData.length : mappedPixels.capacity();
+    }
+
     public byte[] getHeader() {
         return header;
     }
@@ -44,12 +145,18 @@ public class BmpImage {
 
     public void setPixelData(byte[] newPixelData) {
         this.pixelData = newPixelData;
+        this.mappedPixels = null;
     }
 
     public void save(String outputPath) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            fos.write(header);
-            fos.write(pixelData);
+        ByteBuffer pixels = (pixelData != null) ? ByteBuffer.wrap(pixelData) : mappedPixels.duplicate();
+        ByteBuffer[] buffers = {ByteBuffer.wrap(header), pixels};
+        try (FileChannel channel = FileChannel.open(Paths.get(outputPath),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Gathering write: header and pixel data go to the file without being joined first
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
         }
     }
 
@@ -97,6 +204,36 @@ public class BmpImage {
         return getIntFromHeader(22);
     }
 
+    /**
+     * Gets the color depth of the image from the header.
+     * @return 8, 24 or 32 bits per pixel
+     */
+    public int getBitsPerPixel() {
+        return (header[28] & 0xFF) | ((header[29] & 0xFF) << 8);
+    }
+
+    public int getBytesPerPixel() {
+        return getBitsPerPixel() / 8;
+    }
+
+    /**
+     * Returns the stride of the image: the bytes per row, padded to a multiple of 4.
+     * @return The row size in bytes
+     */
+    public int getRowSize() {
+        return rowSize(getWidth(), getBitsPerPixel());
+    }
+
+    /**
+     * Returns the bytes per row of a BMP image, padded to a multiple of 4.
+     * @param width The width in pixels
+     * @param bitsPerPixel The color depth
+     * @return The row size in bytes
+     */
+    public static int rowSize(int width, int bitsPerPixel) {
+        return (int) (((long) width * bitsPerPixel + 31) / 32) * 4;
+    }
+
     /**
      * Gets a 4-byte integer from the header at the specified position in little endian format.
      * @param position The starting position in the header (0-based)
@@ -129,13 +266,15 @@ public class BmpImage {
         int currentWidth = getWidth();
         int currentHeight = getHeight();
 
+        int bytesPerPixel = getBytesPerPixel();
         int startX = (currentWidth - targetWidth) / 2;
         int startY = (currentHeight - targetHeight) / 2;
 
         // BMP: filas de abajo hacia arriba, con padding por fila
-        int currentRowSize = ((currentWidth + 3) / 4) * 4; // bytes por fila con padding
-        int targetRowSize = ((targetWidth + 3) / 4) * 4;   // bytes por fila con padding
+        int currentRowSize = getRowSize();                                   // bytes por fila con padding
+        int targetRowSize = rowSize(targetWidth, getBitsPerPixel());          // bytes por fila con padding
 
+        byte[] source = getPixelData();
         byte[] newPixelData = new byte[targetRowSize * targetHeight];
 
         for (int y = 0; y < targetHeight; y++) {
@@ -146,43 +285,55 @@ public class BmpImage {
             int sourceRowOffset = sourceRow * currentRowSize;
             int targetRowOffset = targetRow * targetRowSize;
 
-            // Copiar los píxeles centrales de la fila
+            // Copiar los píxeles centrales de la fila, todos los canales de una vez
             System.arraycopy(
-                pixelData,
-                sourceRowOffset + startX,
+                source,
+                sourceRowOffset + startX * bytesPerPixel,
                 newPixelData,
                 targetRowOffset,
-                targetWidth
+                targetWidth * bytesPerPixel
             );
-            // El resto del targetRow (si targetWidth no es múltiplo de 4) queda en 0 (padding)
+            // El resto del targetRow (si la fila no es múltiplo de 4) queda en 0 (padding)
         }
 
+        return new BmpImage(headerWithSize(header, targetWidth, targetHeight, newPixelData.length), newPixelData);
+    }
+
+    /**
+     * Returns a copy of a header with new dimensions, file size and image size.
+     * @param header The original header
+     * @param width The new width
+     * @param height The new height
+     * @param pixelDataLength The length of the new pixel data, row padding included
+     * @return The new header
+     */
+    public static byte[] headerWithSize(byte[] header, int width, int height, int pixelDataLength) {
         // Crear nuevo header
         byte[] newHeader = header.clone();
         // Actualizar ancho y alto
-        newHeader[18] = (byte) (targetWidth & 0xFF);
-        newHeader[19] = (byte) ((targetWidth >> 8) & 0xFF);
-        newHeader[20] = (byte) ((targetWidth >> 16) & 0xFF);
-        newHeader[21] = (byte) ((targetWidth >> 24) & 0xFF);
+        newHeader[18] = (byte) (width & 0xFF);
+        newHeader[19] = (byte) ((width >> 8) & 0xFF);
+        newHeader[20] = (byte) ((width >> 16) & 0xFF);
+        newHeader[21] = (byte) ((width >> 24) & 0xFF);
 
-        newHeader[22] = (byte) (targetHeight & 0xFF);
-        newHeader[23] = (byte) ((targetHeight >> 8) & 0xFF);
-        newHeader[24] = (byte) ((targetHeight >> 16) & 0xFF);
-        newHeader[25] = (byte) ((targetHeight >> 24) & 0xFF);
+        newHeader[22] = (byte) (height & 0xFF);
+        newHeader[23] = (byte) ((height >> 8) & 0xFF);
+        newHeader[24] = (byte) ((height >> 16) & 0xFF);
+        newHeader[25] = (byte) ((height >> 24) & 0xFF);
 
         // Actualizar tamaño de archivo
-        int newFileSize = newHeader.length + newPixelData.length;
+        int newFileSize = newHeader.length + pixelDataLength;
         newHeader[2] = (byte) (newFileSize & 0xFF);
         newHeader[3] = (byte) ((newFileSize >> 8) & 0xFF);
         newHeader[4] = (byte) ((newFileSize >> 16) & 0xFF);
         newHeader[5] = (byte) ((newFileSize >> 24) & 0xFF);
 
         // Actualizar tamaño de la imagen (bytes 34-37)
-        newHeader[34] = (byte) (newPixelData.length & 0xFF);
-        newHeader[35] = (byte) ((newPixelData.length >> 8) & 0xFF);
-        newHeader[36] = (byte) ((newPixelData.length >> 16) & 0xFF);
-        newHeader[37] = (byte) ((newPixelData.length >> 24) & 0xFF);
+        newHeader[34] = (byte) (pixelDataLength & 0xFF);
+        newHeader[35] = (byte) ((pixelDataLength >> 8) & 0xFF);
+        newHeader[36] = (byte) ((pixelDataLength >> 16) & 0xFF);
+        newHeader[37] = (byte) ((pixelDataLength >> 24) & 0xFF);
 
-        return new BmpImage(newHeader, newPixelData);
+        return newHeader;
     }
 }
@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps carrier directories and parsed carrier images in memory so that several
+ * distributions in the same run do not list, read and crop the same files again.
+ * Images are kept in least recently used order under a memory budget (the size of
+ * their headers and pixel data) and are keyed by path, modification time and target
+ * size, so a carrier that changes on disk is read again.
+ * Cached images are shared and must not be modified; {@link SecretDistributor}
+ * only reads their pixel data (LSB embedding works on a copy).
+ */
+public class CarrierCache {
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final ConcurrentHashMap<String, Listado> directorios = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Clave, BmpImage> imagenes = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytesEnUso;
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder desalojos = new LongAdder();
+
+    public CarrierCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * Constructs a CarrierCache.
+     * @param maxBytes The memory budget for cached images, in bytes (0 disables image caching)
+     */
+    public CarrierCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("El presupuesto de memoria no puede ser negativo.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the BMP files of a carrier directory, listed again only if the directory changed.
+     * @param dir The carrier directory
+     * @return The BMP files, in the order returned by {@link File#listFiles}, or null if the directory cannot be read
+     */
+    public List<File> listCarriers(String dir) {
+        File carpeta = new File(dir).getAbsoluteFile();
+        long modificado = carpeta.lastModified();
+        Listado listado = directorios.compute(carpeta.getPath(), (d, actual) -> {
+            if (actual != null && actual.modificado == modificado) {
+                return actual;
+            }
+            File[] encontrados = carpeta.listFiles((f, name) -> name.toLowerCase().endsWith(".bmp"));
+            return new Listado(modificado, encontrados == null ? List.of() : Arrays.asList(encontrados));
+        });
+        return listado.archivos.isEmpty() ? null : listado.archivos;
+    }
+
+    /**
+     * Returns the parsed carrier image, reading it only the first time.
+     * @param archivo The carrier file
+     * @return The shared, read-only carrier image
+     * @throws IOException If the image cannot be read
+     */
+    public BmpImage get(File archivo) throws IOException {
+        return get(archivo, 0, 0);
+    }
+
+    /**
+     * Returns the carrier image cropped to the target size, as {@link BmpImage#cropToSize} would,
+     * reading and cropping it only the first time. Carriers that are not larger than the target
+     * in both dimensions, or a target of 0x0, are returned as they are on disk.
+     * @param archivo The carrier file
+     * @param targetWidth The width to crop to, or 0 to keep the carrier size
+     * @param targetHeight The height to crop to, or 0 to keep the carrier size
+     * @return The shared, read-only carrier image
+     * @throws IOException If the image cannot be read
+     */
+    public BmpImage get(File archivo, int targetWidth, int targetHeight) throws IOException {
+        Clave clave = new Clave(archivo.getAbsolutePath(), archivo.lastModified(), targetWidth, targetHeight);
+        synchronized (this) {
+            BmpImage cached = imagenes.get(clave);
+            if (cached != null) {
+                aciertos.increment();
+                return cached;
+            }
+        }
+        fallos.increment();
+        // Read outside the lock so that other carriers can still be served
+        BmpImage imagen = new BmpImage(clave.path);
+        if (targetWidth > 0 && targetHeight > 0
+                && imagen.getWidth() >= targetWidth && imagen.getHeight() >= targetHeight
+                && (imagen.getWidth() != targetWidth || imagen.getHeight() != targetHeight)) {
+            imagen = imagen.cropToSize(targetWidth, targetHeight);
+        }
+        long peso = peso(imagen);
+        synchronized (this) {
+            BmpImage previa = imagenes.get(clave);
+            if (previa != null) {
+                return previa;
+            }
+            if (peso <= maxBytes) {
+                imagenes.put(clave, imagen);
+                bytesEnUso += peso;
+                desalojar();
+            }
+        }
+        return imagen;
+    }
+
+    /**
+     * Evicts least recently used images until the cache fits in its budget.
+     */
+    private void desalojar() {
+        Iterator<Map.Entry<Clave, BmpImage>> it = imagenes.entrySet().iterator();
+        while (bytesEnUso > maxBytes && it.hasNext()) {
+            bytesEnUso -= peso(it.next().getValue());
+            it.remove();
+            desalojos.increment();
+        }
+    }
+
+    private static long peso(BmpImage imagen) {
+        return (long) imagen.getHeader().length + imagen.getPixelDataLength();
+    }
+
+    public long getHits() {
+        return aciertos.sum();
+    }
+
+    public long getMisses() {
+        return fallos.sum();
+    }
+
+    public long getEvictions() {
+        return desalojos.sum();
+    }
+
+    public synchronized long getBytesInUse() {
+        return bytesEnUso;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private static final class Listado {
+        final long modificado;
+        final List<File> archivos;
+
+        Listado(long modificado, List<File> archivos) {
+            this.modificado = modificado;
+            this.archivos = archivos;
+        }
+    }
+
+    private static final class Clave {
+        final String path;
+        final long modificado;
+        final int width;
+        final int height;
+
+        Clave(String path, long modificado, int width, int height) {
+            this.path = path;
+            this.modificado = modificado;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Clave)) {
+                return false;
+            }
+            Clave otra = (Clave) o;
+            return modificado == otra.modificado && width == otra.width && height == otra.height && path.equals(otra.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, modificado, width, height);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Arithmetic in GF(2^8) with the polynomial x^8 + x^4 + x^3 + x^2 + 1 (0x11D) and generator 2,
+ * through log/antilog tables: addition is XOR and a product is two lookups and an add.
+ * LOG[0] points past the antilog entries of every non-zero product, where EXP holds zeros,
+ * so products with 0 need no branch.
+ */
+public final class Gf256 {
+    private static final int POLYNOMIAL = 0x11D;
+    private static final int LOG_ZERO = 512;
+    static final int[] EXP = new int[2 * LOG_ZERO + 1];
+    static final int[] LOG = new int[256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0) {
+                x ^= POLYNOMIAL;
+            }
+        }
+        // Sums of two logs go up to 508; from LOG_ZERO on, EXP stays 0
+        for (int i = 255; i < LOG_ZERO; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+        LOG[0] = LOG_ZERO;
+    }
+
+    private Gf256() {
+    }
+
+    /**
+     * Multiplies two field elements.
+     * @param a A value between 0 and 255
+     * @param b A value between 0 and 255
+     * @return The product
+     */
+    public static int mul(int a, int b) {
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    /**
+     * Returns the multiplicative inverse of a non-zero element.
+     * @param a A value between 1 and 255
+     * @return The inverse
+     */
+    public static int inv(int a) {
+        if (a == 0) {
+            throw new ArithmeticException("0 no tiene inverso en GF(2^8)");
+        }
+        return EXP[255 - LOG[a]];
+    }
+
+    /**
+     * Inverts the Vandermonde matrix of the given shadow ids with Gauss-Jordan elimination.
+     * @param x The shadow ids (distinct, between 1 and 255)
+     * @return The flat inverse, row by row: row i holds the weights of coefficient i
+     */
+    public static int[] invertVandermonde(int[] x) {
+        int size = x.length;
+        int[][] m = new int[size][2 * size];
+        for (int row = 0; row < size; row++) {
+            int val = 1;
+            for (int col = 0; col < size; col++) {
+                m[row][col] = val;
+                val = mul(val, x[row]);
+            }
+            m[row][size + row] = 1;
+        }
+        for (int col = 0; col < size; col++) {
+            int pivote = col;
+            while (m[pivote][col] == 0) {
+                pivote++;
+                if (pivote == size) {
+                    throw new IllegalArgumentException("Los números de sombra deben ser distintos y no nulos en GF(2^8).");
+                }
+            }
+            int[] aux = m[pivote];
+            m[pivote] = m[col];
+            m[col] = aux;
+            int inv = inv(m[col][col]);
+            for (int j = 0; j < 2 * size; j++) {
+                m[col][j] = mul(m[col][j], inv);
+            }
+            for (int r = 0; r < size; r++) {
+                int factor = m[r][col];
+                if (r != col && factor != 0) {
+                    for (int j = 0; j < 2 * size; j++) {
+                        m[r][j] ^= mul(factor, m[col][j]);
+                    }
+                }
+            }
+        }
+        int[] inversa = new int[size * size];
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(m[row], size, inversa, row * size, size);
+        }
+        return inversa;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Arithmetic modulo the prime 257 for the sharing polynomials, without allocation on the hot paths:
+ * inverses come from a 257-entry table, reductions use a Barrett multiply-shift instead of a
+ * division, and sums of products are reduced once instead of after every term (lazy reduction).
+ * Matrices are flat int arrays, row by row, and elimination works in place on buffers owned by
+ * the caller, so they can be reused for every block.
+ */
+public final class Gf257 {
+    public static final int MOD = 257;
+    /** 257^2: added before a subtraction of a product of two reduced values so the result stays positive. */
+    private static final int MOD2 = MOD * MOD;
+    /** floor(2^32 / 257), the Barrett constant. */
+    private static final long BARRETT = 0xFF00FFL;
+    static final int[] INV = new int[MOD];
+
+    static {
+        INV[1] = 1;
+        for (int a = 2; a < MOD; a++) {
+            INV[a] = MOD - (MOD / a) * INV[MOD % a] % MOD;
+        }
+    }
+
+    private Gf257() {
+    }
+
+    /**
+     * Reduces a non-negative int modulo 257.
+     * @param x A value between 0 and Integer.MAX_VALUE
+     * @return x mod 257
+     */
+    public static int reduce(int x) {
+        // The quotient estimate is at most one short
+        int r = x - (int) ((x * BARRETT) >>> 32) * MOD;
+        return r >= MOD ? r - MOD : r;
+    }
+
+    /**
+     * Multiplies two reduced values.
+     * @param a A value between 0 and 256
+     * @param b A value between 0 and 256
+     * @return a * b mod 257
+     */
+    public static int mul(int a, int b) {
+        return reduce(a * b);
+    }
+
+    /**
+     * Returns a - b * c mod 257 with a single reduction.
+     * @param a A value between 0 and 256
+     * @param b A value between 0 and 256
+     * @param c A value between 0 and 256
+     * @return The reduced difference
+     */
+    public static int subMul(int a, int b, int c) {
+        return reduce(a + MOD2 - b * c);
+    }
+
+    /**
+     * Returns the multiplicative inverse of a non-zero element.
+     * @param a A value between 1 and 256
+     * @return The inverse
+     */
+    public static int inv(int a) {
+        if (a == 0) {
+            throw new ArithmeticException("0 no tiene inverso módulo 257");
+        }
+        return INV[a];
+    }
+
+    /**
+     * Dot product of a row of a flat matrix and a vector, reduced once at the end.
+     * Every product is at most 256^2, so up to 32767 terms fit in an int.
+     * @param m The flat matrix
+     * @param offset The first element of the row
+     * @param y The vector, with values between 0 and 256
+     * @param length The number of terms
+     * @return The reduced dot product
+     */
+    public static int dot(int[] m, int offset, int[] y, int length) {
+        int acc = 0;
+        for (int r = 0; r < length; r++) {
+            acc += m[offset + r] * y[r];
+        }
+        return reduce(acc);
+    }
+
+    /**
+     * Gauss-Jordan elimination, in place, of a rows x cols flat matrix with reduced entries.
+     * Pivots are searched in the first pivotCols columns; every pivot row is scaled to 1 and its
+     * column cleared in all the other rows, so the remaining columns end up holding the solution
+     * (an augmented system) or the inverse (a matrix augmented with the identity).
+     * @param m The matrix, row by row
+     * @param rows The number of rows
+     * @param cols The number of columns
+     * @param pivotCols The number of columns where pivots are searched
+     * @param pivotColumns If not null, receives the pivot column of each of the first rank rows
+     * @return The rank: the number of pivots found
+     */
+    public static int eliminate(int[] m, int rows, int cols, int pivotCols, int[] pivotColumns) {
+        int rank = 0;
+        for (int col = 0; col < pivotCols && rank < rows; col++) {
+            int pivote = rank;
+            while (pivote < rows && m[pivote * cols + col] == 0) {
+                pivote++;
+            }
+            if (pivote == rows) {
+                continue;
+            }
+            int fila = rank * cols;
+            if (pivote != rank) {
+                int otra = pivote * cols;
+                for (int j = col; j < cols; j++) {
+                    int aux = m[fila + j];
+                    m[fila + j] = m[otra + j];
+                    m[otra + j] = aux;
+                }
+            }
+            int inv = INV[m[fila + col]];
+            for (int j = col; j < cols; j++) {
+                m[fila + j] = reduce(m[fila + j] * inv);
+            }
+            for (int r = 0; r < rows; r++) {
+                int otra = r * cols;
+                int factor = m[otra + col];
+                if (r != rank && factor != 0) {
+                    for (int j = col; j < cols; j++) {
+                        m[otra + j] = reduce(m[otra + j] + MOD2 - factor * m[fila + j]);
+                    }
+                }
+            }
+            if (pivotColumns != null) {
+                pivotColumns[rank] = col;
+            }
+            rank++;
+        }
+        return rank;
+    }
+
+    /**
+     * Inverts the Vandermonde matrix of the given shadow ids into caller-provided buffers.
+     * @param x The shadow ids (distinct, between 1 and 256)
+     * @param trabajo A work buffer of at least 2 * x.length^2 elements
+     * @param inversa Receives the x.length^2 inverse, row by row: row i holds the weights of coefficient i
+     */
+    public static void invertVandermonde(int[] x, int[] trabajo, int[] inversa) {
+        int size = x.length;
+        int cols = 2 * size;
+        for (int row = 0; row < size; row++) {
+            int fila = row * cols;
+            int val = 1;
+            for (int col = 0; col < size; col++) {
+                trabajo[fila + col] = val;
+                trabajo[fila + size + col] = (col == row) ? 1 : 0;
+                val = reduce(val * x[row]);
+            }
+        }
+        if (eliminate(trabajo, size, cols, size, null) < size) {
+            throw new IllegalArgumentException("Los números de sombra deben ser distintos y no nulos módulo 257.");
+        }
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(trabajo, row * cols + size, inversa, row * size, size);
+        }
+    }
+
+    /**
+     * Inverts the Vandermonde matrix of the given shadow ids.
+     * @param x The shadow ids (distinct, between 1 and 256)
+     * @return The flat inverse, row by row: row i holds the weights of coefficient i
+     */
+    public static int[] invertVandermonde(int[] x) {
+        int[] inversa = new int[x.length * x.length];
+        invertVandermonde(x, new int[2 * x.length * x.length], inversa);
+        return inversa;
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Updates existing shadows after a small edit of the secret, without distributing it again.
+ * The seed, the permutation version and the shadow ids are taken from the shadows; the new
+ * secret is compared with the previous one block by block (k bytes, one polynomial), and only
+ * the changed blocks are permuted, evaluated and written into the LSBs of the shadow files,
+ * in place. The result is the same as distributing the new secret with the same seed and carriers.
+ * Shadows with an integrity check get their digest updated from the old and new changed blocks.
+ */
+public class IncrementalDistributor {
+    private final int k;
+    private final String shadowsDir;
+    private PhaseStats stats = new PhaseStats("update");
+    private int bloquesCambiados;
+
+    /**
+     * Constructs an IncrementalDistributor.
+     * @param k The threshold the shadows were created with
+     * @param shadowsDir The directory containing the shadow images to update
+     */
+    public IncrementalDistributor(int k, String shadowsDir) {
+        if (k < 2 || k > 10) {
+            throw new IllegalArgumentException("El valor de k debe estar entre 2 y 10.");
+        }
+        this.k = k;
+        this.shadowsDir = shadowsDir;
+    }
+
+    /**
+     * Records the phases and counters of the update in the given stats.
+     * @param stats The stats to record into
+     */
+    public void setStats(PhaseStats stats) {
+        this.stats = stats;
+    }
+
+    public PhaseStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return The number of polynomial blocks rewritten by the last update
+     */
+    public int getChangedBlocks() {
+        return bloquesCambiados;
+    }
+
+    /**
+     * Patches the shadows so that they share newSecret instead of previousSecret.
+     * @param previousSecret The pixel data of the secret the shadows were created from
+     * @param newSecret The pixel data of the edited secret, of the same size
+     * @param n The number of shadows of the original distribution, or -1 to use the highest shadow id found
+     * @param threads The number of worker threads
+     * @return The number of changed blocks
+     * @throws Exception If the shadows cannot be read or written
+     */
+    @SuppressWarnings("try")
+    public int update(byte[] previousSecret, byte[] newSecret, int n, int threads) throws Exception {
+        if (previousSecret.length != newSecret.length) {
+            throw new IllegalArgumentException("El secreto nuevo debe tener el mismo tamaño que el anterior; " +
+                    "distribúyalo de nuevo sin actualización incremental.");
+        }
+        if (newSecret.length % k != 0) {
+            throw new IllegalArgumentException("La cantidad de bytes del secreto no es divisible por k.");
+        }
+        int cantidadPolinomios = newSecret.length / k;
+
+        File[] contenedores = new File(shadowsDir).listFiles((d, name) -> ShareContainer.isContainer(name));
+        if (contenedores != null && contenedores.length > 0) {
+            throw new IllegalArgumentException("La actualización incremental solo modifica sombras BMP y " + shadowsDir +
+                    " tiene contenedores " + ShareContainer.EXTENSION + "; distribuya el secreto de nuevo en lugar de actualizarlo.");
+        }
+        File[] sombras = new File(shadowsDir).listFiles((d, name) -> name.endsWith(".bmp"));
+        if (sombras == null || sombras.length == 0) {
+            throw new IllegalArgumentException("No se encontraron sombras en el directorio: " + shadowsDir);
+        }
+        Arrays.sort(sombras);
+        int[] sombraIds = new int[sombras.length];
+        int seed = -1;
+        ShadowMetadata metadata = null;
+        int maxId = 0;
+        for (int i = 0; i < sombras.length; i++) {
+            byte[] header = BmpImage.readHeader(sombras[i].getAbsolutePath());
+            BmpImage info = new BmpImage(header, null);
+            int sombraSeed = info.getReservedBytes(6) & 0xFFFF;
+            ShadowMetadata sombraMetadata = ShadowMetadata.read(header);
+            if (i == 0) {
+                seed = sombraSeed;
+                metadata = sombraMetadata;
+            } else if (sombraSeed != seed || !sombraMetadata.matches(metadata)) {
+                throw new IllegalArgumentException("Las sombras no pertenecen a la misma distribución: " + sombras[i].getName());
+            }
+            // The number of polynomials is stored in 3 bytes
+            if ((info.getIntFromHeader(34) & 0xFFFFFF) != (cantidadPolinomios & 0xFFFFFF)) {
+                throw new IllegalArgumentException("La sombra " + sombras[i].getName() + " no corresponde a un secreto de este tamaño con k=" + k);
+            }
+            sombraIds[i] = info.getReservedBytes(8) & 0xFFFF;
+            if (sombraIds[i] < 1) {
+                throw new IllegalArgumentException("Número de sombra inválido en " + sombras[i].getName());
+            }
+            maxId = Math.max(maxId, sombraIds[i]);
+        }
+        int cantidadSombras = Math.max(n, maxId);
+        int version = metadata.getPermutationVersion();
+
+        int[] cambiados;
+        try (PhaseStats.Timer t = stats.start("diff")) {
+            cambiados = bloquesCambiados(previousSecret, newSecret);
+        }
+        bloquesCambiados = cambiados.length;
+        stats.count("changedBlocks", cambiados.length);
+        stats.count("polynomials", cantidadPolinomios);
+        if (cambiados.length == 0) {
+            return 0;
+        }
+
+        // Permute only the changed blocks: the table at j*k is the same as in the full distribution
+        byte[] coeficientes;
+        byte[] anteriores = null;
+        try (PhaseStats.Timer t = stats.start("permute")) {
+            coeficientes = permutarBloques(newSecret, cambiados, version, seed);
+            if (metadata.hasIntegrity()) {
+                anteriores = permutarBloques(previousSecret, cambiados, version, seed);
+            }
+        }
+
+        PolynomialEvaluator evaluador = new PolynomialEvaluator(k, cantidadSombras, metadata.getField());
+        byte[][] valores = new byte[cantidadSombras][cambiados.length];
+        try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+            try (PhaseStats.Timer t = stats.start("evaluate")) {
+                executor.forEachRange(cambiados.length, (desde, hasta) -> {
+                    int[] v = new int[cantidadSombras];
+                    for (int b = desde; b < hasta; b++) {
+                        evaluador.evaluateAvoiding256(coeficientes, b * k, v);
+                        for (int s = 0; s < cantidadSombras; s++) {
+                            valores[s][b] = (byte) v[s];
+                        }
+                    }
+                });
+            }
+            stats.count("adjustedPolynomials", evaluador.getAdjustedBlocks());
+            stats.count("decrementedUnits", evaluador.getDecrementedUnits());
+
+            // Swap the hashes of the old blocks, as they were adjusted when distributed, for the new ones
+            byte[] nuevoHeader = null;
+            if (anteriores != null) {
+                try (PhaseStats.Timer t = stats.start("digest")) {
+                    PolynomialEvaluator anterior = new PolynomialEvaluator(k, cantidadSombras, metadata.getField());
+                    int[] v = new int[cantidadSombras];
+                    long digest = metadata.getDigest();
+                    for (int b = 0; b < cambiados.length; b++) {
+                        anterior.evaluateAvoiding256(anteriores, b * k, v);
+                        digest ^= ShadowDigest.blockHash(cambiados[b], anteriores, b * k, k)
+                                ^ ShadowDigest.blockHash(cambiados[b], coeficientes, b * k, k);
+                    }
+                    metadata.setDigest(digest);
+                }
+            }
+            ShadowMetadata actualizada = anteriores != null ? metadata : null;
+
+            try (PhaseStats.Timer t = stats.start("patch")) {
+                executor.forEachRange(sombras.length, (desde, hasta) -> {
+                    for (int i = desde; i < hasta; i++) {
+                        parchear(sombras[i], cambiados, valores[sombraIds[i] - 1], actualizada);
+                    }
+                });
+            }
+        }
+        stats.count("shadows", sombras.length);
+        return cambiados.length;
+    }
+
+    /**
+     * Copies the given blocks of a secret into a new array and permutes them with the table at
+     * their position, one keystream call per run of consecutive blocks. The legacy table is not
+     * generated up to the blocks, {@link PermutationTable#xorKeystream} jumps ahead to each run.
+     */
+    private byte[] permutarBloques(byte[] secreto, int[] bloques, int version, int seed) {
+        byte[] coeficientes = new byte[bloques.length * k];
+        for (int b = 0; b < bloques.length; b++) {
+            System.arraycopy(secreto, bloques[b] * k, coeficientes, b * k, k);
+        }
+        int desde = 0;
+        for (int b = 1; b <= bloques.length; b++) {
+            if (b == bloques.length || bloques[b] != bloques[b - 1] + 1) {
+                PermutationTable.xorKeystream(version, seed, (long) bloques[desde] * k, coeficientes, desde * k, (b - desde) * k);
+                desde = b;
+            }
+        }
+        return coeficientes;
+    }
+
+    /**
+     * Returns the indexes of the k-byte blocks that differ, in increasing order.
+     */
+    private int[] bloquesCambiados(byte[] anterior, byte[] nuevo) {
+        int[] cambiados = new int[16];
+        int cantidad = 0;
+        int desde = 0;
+        while (desde < nuevo.length) {
+            int diferencia = Arrays.mismatch(anterior, desde, anterior.length, nuevo, desde, nuevo.length);
+            if (diferencia < 0) {
+                break;
+            }
+            int bloque = (desde + diferencia) / k;
+            if (cantidad == cambiados.length) {
+                cambiados = Arrays.copyOf(cambiados, cantidad * 2);
+            }
+            cambiados[cantidad++] = bloque;
+            desde = (bloque + 1) * k;
+        }
+        return Arrays.copyOf(cambiados, cantidad);
+    }
+
+    /**
+     * Writes the new values of the changed blocks into one shadow file, through a writable
+     * mapping of its pixel data so that only the touched pages are written back.
+     * If metadata is given, the metadata block of the header is rewritten with it.
+     */
+    private static void parchear(File sombra, int[] cambiados, byte[] valores, ShadowMetadata metadata) throws IOException {
+        byte[] header = BmpImage.readHeader(sombra.getAbsolutePath());
+        try (FileChannel channel = FileChannel.open(sombra.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (metadata != null) {
+                ByteBuffer nuevo = ByteBuffer.wrap(metadata.applyTo(header));
+                while (nuevo.hasRemaining()) {
+                    channel.write(nuevo, nuevo.position());
+                }
+            }
+            MappedByteBuffer pixels = channel.map(FileChannel.MapMode.READ_WRITE, header.length, channel.size() - header.length);
+            pixels.order(ByteOrder.LITTLE_ENDIAN);
+            for (int b = 0; b < cambiados.length; b++) {
+                LsbSteganography.embedAt(pixels, cambiados[b], valores[b]);
+            }
+            pixels.force();
+        }
+    }
+}
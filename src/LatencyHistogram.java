@@ -0,0 +1,101 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two millisecond buckets:
+ * bucket 0 counts latencies under 1 ms, bucket i latencies in [2^(i-1), 2^i) ms,
+ * and the last bucket everything above.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 20;
+
+    private final LongAdder[] cuentas = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumaNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            cuentas[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one latency.
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long millis = Math.max(0, nanos) / 1_000_000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+        cuentas[bucket].increment();
+        total.increment();
+        sumaNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Returns an upper bound for the given percentile: the upper limit of the
+     * bucket that contains it, in milliseconds (-1 for the open-ended last bucket).
+     * @param percentile The percentile, between 0 and 100
+     * @return The upper bound in milliseconds, or 0 if nothing was recorded
+     */
+    public long percentileUpperBound(double percentile) {
+        long[] snapshot = snapshot();
+        long count = 0;
+        for (long c : snapshot) {
+            count += c;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long objetivo = (long) Math.ceil(count * percentile / 100.0);
+        long acumulado = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            acumulado += snapshot[i];
+            if (acumulado >= objetivo) {
+                return i == BUCKETS - 1 ? -1 : 1L << i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the histogram as a JSON object with the count, the mean, p50/p90/p99 upper
+     * bounds and the non-empty buckets, keyed by their upper limit in milliseconds.
+     * @return The JSON text
+     */
+    public String toJson() {
+        long[] snapshot = snapshot();
+        long count = total.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"count\":").append(count);
+        sb.append(",\"meanMs\":").append(count == 0 ? "0" : String.format(Locale.ROOT, "%.3f", sumaNanos.sum() / 1e6 / count));
+        sb.append(",\"p50Ms\":").append(percentileUpperBound(50));
+        sb.append(",\"p90Ms\":").append(percentileUpperBound(90));
+        sb.append(",\"p99Ms\":").append(percentileUpperBound(99));
+        sb.append(",\"buckets\":{");
+        boolean primero = true;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (snapshot[i] == 0) {
+                continue;
+            }
+            if (!primero) {
+                sb.append(',');
+            }
+            primero = false;
+            sb.append('"').append(i == BUCKETS - 1 ? "inf" : "<" + (1L << i)).append("\":").append(snapshot[i]);
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = cuentas[i].sum();
+        }
+        return snapshot;
+    }
+}
@@ -1,55 +1,193 @@
-public class LsbSteganography {
-
-    public static byte[] embed(byte[] carrierData, byte[] dataToHide) {
-        byte[] modified = carrierData.clone();
-        int carrierCapacity = carrierData.length;
-        int bitIndex = 0;
-
-        for (int i = 0; i < dataToHide.length; i++) {
-            int value = Byte.toUnsignedInt(dataToHide[i]);
-
-            // Embed 8 bits of the value
-            for (int bit = 0; bit < 8; bit++) {
-                int carrierIndex = bitIndex % carrierCapacity;
-                int bitPosition = (bitIndex / carrierCapacity) % 8;
-
-                int bitToHide = (value >> (7 - bit)) & 1;
-
-                modified[carrierIndex] &= (byte) ~(1 << bitPosition); // Clear the bit
-                modified[carrierIndex] |= (byte) (bitToHide << bitPosition); // Set the bit
-
-                bitIndex++;
-            }
-
-        }
-
-        return modified;
-    }
-
-    public static byte[] extract(byte[] carrierData, int numBytes) {
-
-        byte[] result = new byte[numBytes];
-        int carrierCapacity = carrierData.length;
-        int bitIndex = 0;
-
-        for (int i = 0; i < numBytes; i++) {
-            int value = 0;
-
-            // Extract 8 bits of the value
-            for (int bit = 0; bit < 8; bit++) {
-                int carrierIndex = bitIndex % carrierCapacity;
-                int bitPosition = (bitIndex / carrierCapacity) % 8;
-
-                int bitValue = (carrierData[carrierIndex] >> bitPosition) & 1;
-                value = (value << 1) | bitValue;
-
-                bitIndex++;
-            }
-
-            result[i] = (byte) value;
-
-        }
-        return result;
-
-    }
-}
\ No newline at end of file
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class LsbSteganography {
+
+    // Reads and writes 8 carrier bytes at once; carrier byte i is byte i of the little endian word
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long LSB_MASK = 0x0101010101010101L;
+    // Moves the LSB of byte b of a word to bit (7 - b) of the top byte
+    private static final long GATHER_MULTIPLIER = 0x8040201008040201L;
+    // SPREAD[v] holds bit (7 - b) of v in the LSB of byte b
+    private static final long[] SPREAD = new long[256];
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            long word = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                word |= (long) ((v >> (7 - bit)) & 1) << (8 * bit);
+            }
+            SPREAD[v] = word;
+        }
+    }
+
+    public static byte[] embed(byte[] carrierData, byte[] dataToHide) {
+        byte[] modified = carrierData.clone();
+        int carrierCapacity = carrierData.length;
+
+        // Fast path: everything fits in the first bit plane, one word per payload byte
+        if ((long) dataToHide.length * 8 <= carrierCapacity) {
+            embedFirstPlane(modified, dataToHide, dataToHide.length);
+            return modified;
+        }
+
+        int carrierIndex = 0;
+        int bitPosition = 0;
+
+        for (int i = 0; i < dataToHide.length; i++) {
+            int value = Byte.toUnsignedInt(dataToHide[i]);
+
+            // Embed 8 bits of the value
+            for (int bit = 0; bit < 8; bit++) {
+                int bitToHide = (value >> (7 - bit)) & 1;
+
+                modified[carrierIndex] &= (byte) ~(1 << bitPosition); // Clear the bit
+                modified[carrierIndex] |= (byte) (bitToHide << bitPosition); // Set the bit
+
+                // Once the carrier is full, continue on the next bit plane
+                if (++carrierIndex == carrierCapacity) {
+                    carrierIndex = 0;
+                    bitPosition = (bitPosition + 1) & 7;
+                }
+            }
+
+        }
+
+        return modified;
+    }
+
+    /**
+     * Embeds the first numBytes bytes of dataToHide in the least significant bit of
+     * carrier[0, 8 * numBytes), in place. This is the layout used by {@link #embed}
+     * whenever the payload fits in the first bit plane.
+     * @param carrier The carrier bytes, modified in place
+     * @param dataToHide The bytes to hide
+     * @param numBytes The number of bytes to hide
+     */
+    public static void embedFirstPlane(byte[] carrier, byte[] dataToHide, int numBytes) {
+        Simd.Kernels simd = Simd.kernels();
+        int hechos = (simd != null) ? simd.embedFirstPlane(carrier, dataToHide, numBytes) : 0;
+        for (int i = hechos; i < numBytes; i++) {
+            int base = i << 3;
+            long word = (long) LONG_VIEW.get(carrier, base);
+            LONG_VIEW.set(carrier, base, (word & ~LSB_MASK) | SPREAD[dataToHide[i] & 0xFF]);
+        }
+    }
+
+    /**
+     * Writes payload byte payloadIndex at its place in the layout of {@link #embed}, in place:
+     * payload bit b (most significant first) goes to carrier byte b % capacity, bit plane
+     * (b / capacity) % 8. Used to patch single bytes of an existing shadow.
+     * @param carrier The carrier pixel data, for instance a writable mapping of a shadow file
+     * @param payloadIndex The index of the byte in the hidden data
+     * @param value The new value of the byte
+     */
+    public static void embedAt(ByteBuffer carrier, int payloadIndex, byte value) {
+        int carrierCapacity = carrier.limit();
+        long bitIndex = (long) payloadIndex * 8;
+        for (int bit = 0; bit < 8; bit++, bitIndex++) {
+            int carrierIndex = (int) (bitIndex % carrierCapacity);
+            int bitPosition = (int) ((bitIndex / carrierCapacity) & 7);
+            int bitToHide = (value >> (7 - bit)) & 1;
+            byte actual = carrier.get(carrierIndex);
+            carrier.put(carrierIndex, (byte) ((actual & ~(1 << bitPosition)) | (bitToHide << bitPosition)));
+        }
+    }
+
+    /**
+     * Reads payload byte payloadIndex from its place in the layout of {@link #embed},
+     * touching only the carrier bytes that hold its 8 bits.
+     * @param carrier The carrier pixel data; only absolute reads are used
+     * @param payloadIndex The index of the byte in the hidden data
+     * @return The hidden byte
+     */
+    public static byte extractAt(ByteBuffer carrier, int payloadIndex) {
+        int carrierCapacity = carrier.limit();
+        long bitIndex = (long) payloadIndex * 8;
+        int value = 0;
+        for (int bit = 0; bit < 8; bit++, bitIndex++) {
+            int carrierIndex = (int) (bitIndex % carrierCapacity);
+            int bitPosition = (int) ((bitIndex / carrierCapacity) & 7);
+            value = (value << 1) | ((carrier.get(carrierIndex) >> bitPosition) & 1);
+        }
+        return (byte) value;
+    }
+
+    public static byte[] extract(byte[] carrierData, int numBytes) {
+
+        byte[] result = new byte[numBytes];
+        int carrierCapacity = carrierData.length;
+
+        // Fast path: everything is in the first bit plane, one word per payload byte
+        if ((long) numBytes * 8 <= carrierCapacity) {
+            for (int i = 0; i < numBytes; i++) {
+                long word = (long) LONG_VIEW.get(carrierData, i << 3) & LSB_MASK;
+                result[i] = (byte) ((word * GATHER_MULTIPLIER) >>> 56);
+            }
+            return result;
+        }
+
+        int carrierIndex = 0;
+        int bitPosition = 0;
+
+        for (int i = 0; i < numBytes; i++) {
+            int value = 0;
+
+            // Extract 8 bits of the value
+            for (int bit = 0; bit < 8; bit++) {
+                int bitValue = (carrierData[carrierIndex] >> bitPosition) & 1;
+                value = (value << 1) | bitValue;
+
+                // Once the carrier is full, continue on the next bit plane
+                if (++carrierIndex == carrierCapacity) {
+                    carrierIndex = 0;
+                    bitPosition = (bitPosition + 1) & 7;
+                }
+            }
+
+            result[i] = (byte) value;
+
+        }
+        return result;
+
+    }
+
+    /**
+     * Extracts numBytes hidden bytes from a carrier buffer, such as a memory mapped image,
+     * without copying the carrier to the heap. Uses the same bit layout as {@link #extract(byte[], int)}.
+     * @param carrier The carrier pixel data; only absolute reads are used
+     * @param numBytes The number of bytes to extract
+     * @return The hidden bytes
+     */
+    public static byte[] extract(ByteBuffer carrier, int numBytes) {
+        byte[] result = new byte[numBytes];
+        int carrierCapacity = carrier.limit();
+
+        if ((long) numBytes * 8 <= carrierCapacity) {
+            ByteBuffer words = carrier.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < numBytes; i++) {
+                long word = words.getLong(i << 3) & LSB_MASK;
+                result[i] = (byte) ((word * GATHER_MULTIPLIER) >>> 56);
+            }
+            return result;
+        }
+
+        int carrierIndex = 0;
+        int bitPosition = 0;
+        for (int i = 0; i < numBytes; i++) {
+            int value = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                value = (value << 1) | ((carrier.get(carrierIndex) >> bitPosition) & 1);
+                if (++carrierIndex == carrierCapacity) {
+                    carrierIndex = 0;
+                    bitPosition = (bitPosition + 1) & 7;
+                }
+            }
+            result[i] = (byte) value;
+        }
+        return result;
+    }
+}
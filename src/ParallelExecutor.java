@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Splits an index range into chunks and runs them on a ForkJoinPool.
+ * With a single thread the range is processed inline, in order, on the calling thread.
+ */
+public class ParallelExecutor implements AutoCloseable {
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int threads;
+    private final ForkJoinPool pool;
+
+    /**
+     * A task that processes the indexes in [from, to).
+     */
+    public interface RangeTask {
+        void run(int from, int to) throws Exception;
+    }
+
+    /**
+     * Constructs a ParallelExecutor.
+     * @param threads The number of worker threads (1 means sequential)
+     */
+    public ParallelExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("La cantidad de threads debe ser al menos 1.");
+        }
+        this.threads = threads;
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs the task over [0, total), split in chunks that are processed concurrently.
+     * Returns once every chunk is done; the first failure is rethrown.
+     * @param total The size of the range
+     * @param task The task to run on each chunk
+     * @throws Exception If any chunk fails
+     */
+    public void forEachRange(int total, RangeTask task) throws Exception {
+        if (total <= 0) {
+            return;
+        }
+        if (pool == null) {
+            task.run(0, total);
+            return;
+        }
+        int chunks = Math.min(total, threads * CHUNKS_PER_THREAD);
+        int chunkSize = (total + chunks - 1) / chunks;
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int from = 0; from < total; from += chunkSize) {
+            int start = from;
+            int end = Math.min(total, from + chunkSize);
+            futures.add(pool.submit(() -> {
+                task.run(start, end);
+                return null;
+            }));
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw (Exception) cause;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
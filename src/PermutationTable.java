@@ -1,30 +1,209 @@
-import java.util.Random;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 
 /**
  * Generates and manages a table of random bytes for permutation operations.
  * This class is used to create a deterministic sequence of random bytes based on a seed.
+ * Two table versions exist, and the version used is recorded in the shadows:
+ * <ul>
+ *   <li>{@link #VERSION_LEGACY}: the sequence of {@code new Random(seed).nextInt(256)}.</li>
+ *   <li>{@link #VERSION_COUNTER}: 8 bytes per 64-bit word, where word i is the SplitMix64
+ *   mix of a counter. Any range of the table can be generated independently, so it can be
+ *   built in parallel chunks.</li>
+ * </ul>
  */
 public class PermutationTable {
-    private static final int BYTE_RANGE = 256;
+    public static final int VERSION_LEGACY = 0;
+    public static final int VERSION_COUNTER = 1;
+
+    // java.util.Random linear congruential generator constants
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    // SplitMix64 constants (same as java.util.SplittableRandom)
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
     private final byte[] table;
 
     /**
-     * Creates a new permutation table with the specified size and seed.
+     * Creates a new legacy permutation table with the specified size and seed.
      * 
      * @param seed The seed value for the random number generator
      * @param size The size of the permutation table
      * @throws IllegalArgumentException If size is negative
      */
     public PermutationTable(int seed, int size) {
+        this(seed, size, VERSION_LEGACY);
+    }
+
+    /**
+     * Creates a new permutation table with the specified size, seed and version.
+     * 
+     * @param seed The seed value for the random number generator
+     * @param size The size of the permutation table
+     * @param version {@link #VERSION_LEGACY} or {@link #VERSION_COUNTER}
+     * @throws IllegalArgumentException If size is negative or the version is unknown
+     */
+    public PermutationTable(int seed, int size, int version) {
         if (size < 0) {
             throw new IllegalArgumentException("Table size cannot be negative");
         }
+        checkVersion(version);
         
         table = new byte[size];
-        Random rng = new Random(seed);
+        if (version == VERSION_LEGACY) {
+            new LegacyGenerator(seed).nextBytes(table, 0, size);
+        } else {
+            xorCounterKeystream(seed, 0, table, 0, size);
+        }
+    }
+
+    /**
+     * Validates a table version.
+     * 
+     * @param version The version to check
+     * @throws IllegalArgumentException If the version is unknown
+     */
+    public static void checkVersion(int version) {
+        if (version != VERSION_LEGACY && version != VERSION_COUNTER) {
+            throw new IllegalArgumentException("Versión de tabla de permutación desconocida: " + version);
+        }
+    }
+
+    /**
+     * XORs data[offset, offset + length) with the counter table starting at table index position.
+     * Disjoint ranges are independent, so they can be processed by different threads.
+     * 
+     * @param seed The seed value
+     * @param position The table index that corresponds to data[offset]
+     * @param data The bytes to XOR in place
+     * @param offset The first index of data to process
+     * @param length The number of bytes to process
+     */
+    public static void xorCounterKeystream(int seed, long position, byte[] data, int offset, int length) {
+        long base = mix64(seed);
+        int i = offset;
+        int end = offset + length;
+        // Leading bytes up to a word boundary of the table
+        while (i < end && (position & 7) != 0) {
+            data[i++] ^= (byte) (word(base, position >>> 3) >>> ((position & 7) << 3));
+            position++;
+        }
+        // Whole words, 8 bytes per generator call; several words per vector with the SIMD backend
+        long index = position >>> 3;
+        Simd.Kernels simd = Simd.kernels();
+        if (simd != null && end - i >= 8) {
+            int palabras = simd.xorCounterWords(base, index, data, i, (end - i) / 8);
+            index += palabras;
+            i += palabras * 8;
+        }
+        while (end - i >= 8) {
+            long value = (long) LONG_VIEW.get(data, i);
+            LONG_VIEW.set(data, i, value ^ word(base, index++));
+            i += 8;
+        }
+        // Trailing bytes
+        long last = word(base, index);
+        for (int shift = 0; i < end; shift += 8) {
+            data[i++] ^= (byte) (last >>> shift);
+        }
+    }
+
+    /**
+     * XORs data[offset, offset + length) with the table of the given version starting at table
+     * index position, without generating the table before it. The legacy table jumps ahead
+     * in O(log position) steps.
+     * 
+     * @param version {@link #VERSION_LEGACY} or {@link #VERSION_COUNTER}
+     * @param seed The seed value
+     * @param position The table index that corresponds to data[offset]
+     * @param data The bytes to XOR in place
+     * @param offset The first index of data to process
+     * @param length The number of bytes to process
+     */
+    public static void xorKeystream(int version, int seed, long position, byte[] data, int offset, int length) {
+        checkVersion(version);
+        if (version == VERSION_COUNTER) {
+            xorCounterKeystream(seed, position, data, offset, length);
+            return;
+        }
+        LegacyGenerator generator = new LegacyGenerator(seed);
+        generator.skip(position);
+        byte[] tabla = new byte[length];
+        generator.nextBytes(tabla, 0, length);
+        Simd.Kernels simd = Simd.kernels();
+        if (simd != null) {
+            simd.xor(data, offset, tabla, 0, data, offset, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            data[offset + i] ^= tabla[i];
+        }
+    }
+
+    private static long word(long base, long index) {
+        return mix64(base + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Sequential generator of the legacy table. It yields exactly the bytes of
+     * {@code new Random(seed).nextInt(256)}, but keeps the 48-bit state in a local long
+     * instead of Random's atomic seed. Calling nextBytes repeatedly yields the table in
+     * consecutive chunks, so callers can stream it without holding the whole table.
+     */
+    public static final class LegacyGenerator {
+        private long state;
+
+        public LegacyGenerator(int seed) {
+            state = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        /**
+         * Skips the next count bytes of the table, composing the generator step count times
+         * by repeated squaring instead of running it.
+         * 
+         * @param count The number of bytes to skip
+         */
+        public void skip(long count) {
+            long mult = 1;
+            long plus = 0;
+            long stepMult = MULTIPLIER;
+            long stepPlus = ADDEND;
+            for (long c = count; c > 0; c >>>= 1) {
+                if ((c & 1) != 0) {
+                    mult = (mult * stepMult) & MASK;
+                    plus = (plus * stepMult + stepPlus) & MASK;
+                }
+                stepPlus = ((stepMult + 1) * stepPlus) & MASK;
+                stepMult = (stepMult * stepMult) & MASK;
+            }
+            state = (state * mult + plus) & MASK;
+        }
 
-        for (int i = 0; i < size; i++) {
-            table[i] = (byte) rng.nextInt(BYTE_RANGE);
+        /**
+         * Fills dest[offset, offset + length) with the next bytes of the table.
+         * 
+         * @param dest The array to fill
+         * @param offset The first index to fill
+         * @param length The number of bytes to generate
+         */
+        public void nextBytes(byte[] dest, int offset, int length) {
+            long s = state;
+            for (int i = offset; i < offset + length; i++) {
+                s = (s * MULTIPLIER + ADDEND) & MASK;
+                // nextInt(256) keeps the top 8 of the 48 state bits
+                dest[i] = (byte) (s >>> 40);
+            }
+            state = s;
         }
     }
 
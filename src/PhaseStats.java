@@ -0,0 +1,187 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phase timers and counters of one distribution or recovery. Every phase is also
+ * recorded as a JFR event (visualsss.Phase) and every counter as visualsss.Counter,
+ * so a recording taken with -XX:StartFlightRecording shows them next to GC and I/O.
+ * The events are only created once JFR is running: loading the first event class
+ * initializes JFR, which would add hundreds of milliseconds to every CLI run.
+ * Phases may run on several threads at once; their time is the sum over threads.
+ */
+public class PhaseStats {
+    private final String operation;
+    private final long inicio = System.nanoTime();
+    private final Map<String, Acumulado> fases = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, LongAdder> contadores = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Constructs a PhaseStats.
+     * @param operation The operation being measured, e.g. "distribute" or "recover"
+     */
+    public PhaseStats(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Starts timing a phase; closing the returned timer records it.
+     * @param fase The phase name
+     * @return The running timer
+     */
+    public Timer start(String fase) {
+        return new Timer(fase);
+    }
+
+    /**
+     * Adds to a counter.
+     * @param nombre The counter name
+     * @param delta The amount to add
+     */
+    public void count(String nombre, long delta) {
+        contadores.computeIfAbsent(nombre, c -> new LongAdder()).add(delta);
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        CounterEvent event = new CounterEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.counter = nombre;
+            event.delta = delta;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the total time recorded for a phase.
+     * @param fase The phase name
+     * @return The time in nanoseconds, 0 if the phase did not run
+     */
+    public long getNanos(String fase) {
+        Acumulado a = fases.get(fase);
+        return a == null ? 0 : a.nanos.sum();
+    }
+
+    /**
+     * Returns the value of a counter.
+     * @param nombre The counter name
+     * @return The counter value, 0 if it was never updated
+     */
+    public long getCount(String nombre) {
+        LongAdder c = contadores.get(nombre);
+        return c == null ? 0 : c.sum();
+    }
+
+    /**
+     * Returns the summary as JSON: the operation, the wall time since construction,
+     * calls and total milliseconds per phase (in the order they first ran) and the counters.
+     * @return The JSON text
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"operation\":\"").append(operation).append('"');
+        sb.append(",\"wallMs\":").append(millis(System.nanoTime() - inicio));
+        sb.append(",\"phases\":{");
+        synchronized (fases) {
+            boolean primero = true;
+            for (Map.Entry<String, Acumulado> e : fases.entrySet()) {
+                sb.append(primero ? "" : ",").append('"').append(e.getKey()).append("\":{\"calls\":")
+                        .append(e.getValue().llamadas.sum()).append(",\"totalMs\":").append(millis(e.getValue().nanos.sum())).append('}');
+                primero = false;
+            }
+        }
+        sb.append("},\"counters\":{");
+        synchronized (contadores) {
+            boolean primero = true;
+            for (Map.Entry<String, LongAdder> e : contadores.entrySet()) {
+                sb.append(primero ? "" : ",").append('"').append(e.getKey()).append("\":").append(e.getValue().sum());
+                primero = false;
+            }
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /**
+     * A running phase, meant for try-with-resources. The timer is only there to be closed, so
+     * the methods that use it carry {@code @SuppressWarnings("try")} for javac's -Xlint:try.
+     */
+    public final class Timer implements AutoCloseable {
+        private final String fase;
+        private final long desde = System.nanoTime();
+        private final PhaseEvent event;
+
+        private Timer(String fase) {
+            this.fase = fase;
+            this.event = FlightRecorder.isInitialized() ? new PhaseEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - desde;
+            Acumulado a = fases.computeIfAbsent(fase, f -> new Acumulado());
+            a.nanos.add(nanos);
+            a.llamadas.increment();
+            if (event == null) {
+                return;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.phase = fase;
+                event.commit();
+            }
+        }
+    }
+
+    private static final class Acumulado {
+        final LongAdder nanos = new LongAdder();
+        final LongAdder llamadas = new LongAdder();
+    }
+
+    @Name("visualsss.Phase")
+    @Label("VisualSSS Phase")
+    @Category("VisualSSS")
+    @StackTrace(false)
+    @Description("One phase of a distribution or recovery")
+    static class PhaseEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("visualsss.Counter")
+    @Label("VisualSSS Counter")
+    @Category("VisualSSS")
+    @StackTrace(false)
+    @Description("An update of a distribution or recovery counter")
+    static class CounterEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Counter")
+        String counter;
+
+        @Label("Delta")
+        long delta;
+    }
+}
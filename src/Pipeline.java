@@ -0,0 +1,201 @@
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stages that run on their own threads, connected by bounded channels, so that reading,
+ * computing and writing overlap instead of running one after the other. A full channel
+ * blocks its producer, which bounds the items in flight (and the memory they take).
+ * Stages run on virtual threads when the runtime has them (Java 21+), and on platform
+ * threads otherwise. If a stage fails, the other stages are interrupted and {@link #await()}
+ * rethrows the failure; closing the pipeline stops the stages that are still running, so an
+ * error in the calling thread does not leave them blocked.
+ */
+public class Pipeline implements AutoCloseable {
+    /** Items that can wait in a channel: one being worked on downstream and one ready. */
+    public static final int DEFAULT_CAPACITY = 2;
+
+    private final ExecutorService executor = crearExecutor();
+    private final Set<Thread> enCurso = new HashSet<>();
+    private final Semaphore terminadas = new Semaphore(0);
+    private int iniciadas;
+    private volatile Throwable error;
+
+    /**
+     * The work of one stage thread.
+     */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * A bounded queue between two stages. {@link #take()} returns null once the stage
+     * writing to it has finished and every item has been taken.
+     */
+    public static final class Channel<T> {
+        private static final Object FIN = new Object();
+        private final BlockingQueue<Object> cola;
+
+        private Channel(int capacity) {
+            cola = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Adds an item, waiting while the channel is full.
+         * @param item The item, not null
+         * @throws InterruptedException If the pipeline is being stopped
+         */
+        public void put(T item) throws InterruptedException {
+            cola.put(item);
+        }
+
+        /**
+         * Takes the next item, waiting while the channel is empty.
+         * @return The item, or null if no more items will come
+         * @throws InterruptedException If the pipeline is being stopped
+         */
+        @SuppressWarnings("unchecked")
+        public T take() throws InterruptedException {
+            Object item = cola.take();
+            if (item == FIN) {
+                // Leave the mark for the other consumers
+                cola.put(FIN);
+                return null;
+            }
+            return (T) item;
+        }
+
+        private void finish() throws InterruptedException {
+            cola.put(FIN);
+        }
+    }
+
+    /**
+     * Creates a channel between two stages.
+     * @param capacity The number of items it holds before blocking the producer
+     * @return The channel
+     */
+    public <T> Channel<T> channel(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("La capacidad de un canal debe ser al menos 1.");
+        }
+        return new Channel<>(capacity);
+    }
+
+    /**
+     * Starts a stage on the given number of threads, all running the same task.
+     * @param workers The number of threads
+     * @param output The channel the stage writes to, finished when all its threads are done; may be null
+     * @param task The work of each thread
+     */
+    public void stage(int workers, Channel<?> output, Task task) {
+        AtomicInteger pendientes = new AtomicInteger(workers);
+        synchronized (this) {
+            iniciadas += workers;
+        }
+        for (int w = 0; w < workers; w++) {
+            executor.execute(() -> {
+                try {
+                    // A stage that already failed would never feed this one
+                    if (!registrar(Thread.currentThread())) {
+                        return;
+                    }
+                    task.run();
+                    if (pendientes.decrementAndGet() == 0 && output != null) {
+                        output.finish();
+                    }
+                } catch (Throwable e) {
+                    fallar(e);
+                } finally {
+                    quitar(Thread.currentThread());
+                    terminadas.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits for every stage to finish.
+     * @throws Exception The first failure of a stage, if any
+     */
+    public void await() throws Exception {
+        int cantidad;
+        synchronized (this) {
+            cantidad = iniciadas;
+        }
+        terminadas.acquire(cantidad);
+        terminadas.release(cantidad);
+        Throwable e = error;
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e != null) {
+            throw (Exception) e;
+        }
+    }
+
+    private synchronized boolean registrar(Thread hilo) {
+        if (error != null) {
+            return false;
+        }
+        enCurso.add(hilo);
+        return true;
+    }
+
+    private synchronized void quitar(Thread hilo) {
+        enCurso.remove(hilo);
+    }
+
+    private synchronized void fallar(Throwable e) {
+        // Interrupting the other stages makes them fail too; only the first failure counts
+        if (error == null) {
+            error = e;
+            for (Thread hilo : enCurso) {
+                hilo.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops the stages that are still running and waits for them.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        boolean interrumpido = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrumpido = true;
+            }
+        }
+        if (interrumpido) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Uses one virtual thread per stage thread when the runtime has them (Java 21+);
+     * otherwise a daemon platform thread each.
+     */
+    private static ExecutorService crearExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread hilo = new Thread(r, "visualsss-pipeline");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluates the sharing polynomials over GF(257) or GF(2^8) for a fixed set of shadows.
+ * The powers of every shadow id are computed once, so evaluation and coefficient
+ * adjustments only need int arithmetic: over GF(257) each value is a sum of products
+ * reduced once with {@link Gf257#reduce}, and no step allocates.
+ * Over GF(2^8) every value fits in a byte, so no coefficient is ever adjusted and sharing is
+ * lossless; the logs of the powers are kept instead, so each term is one lookup in {@link Gf256#EXP}.
+ */
+public class PolynomialEvaluator {
+    public static final int MOD = Gf257.MOD;
+    /** Field of the original scheme: integers modulo 257, with coefficients lowered to avoid 256. */
+    public static final int FIELD_GF257 = 0;
+    /** GF(2^8) with log/antilog tables (see {@link Gf256}). */
+    public static final int FIELD_GF256 = 1;
+
+    private final int k;
+    private final int n;
+    private final int field;
+    private final int[][] potencias;
+    // Adjustment counters, updated concurrently when blocks are evaluated in parallel
+    private final LongAdder bloquesAjustados = new LongAdder();
+    private final LongAdder unidadesDecrementadas = new LongAdder();
+
+    /**
+     * Constructs a PolynomialEvaluator.
+     * @param k The number of coefficients of each polynomial
+     * @param n The number of shadows (shadow ids go from 1 to n)
+     */
+    public PolynomialEvaluator(int k, int n) {
+        this(k, n, FIELD_GF257);
+    }
+
+    /**
+     * Constructs a PolynomialEvaluator over the given field.
+     * @param k The number of coefficients of each polynomial
+     * @param n The number of shadows (shadow ids go from 1 to n)
+     * @param field {@link #FIELD_GF257} or {@link #FIELD_GF256}
+     */
+    public PolynomialEvaluator(int k, int n, int field) {
+        checkField(field);
+        if (field == FIELD_GF256 && n > 255) {
+            throw new IllegalArgumentException("En GF(2^8) puede haber a lo sumo 255 sombras.");
+        }
+        this.k = k;
+        this.n = n;
+        this.field = field;
+        this.potencias = new int[n][k];
+        for (int s = 0; s < n; s++) {
+            int x = (s + 1) % MOD;
+            int val = 1;
+            for (int i = 0; i < k; i++) {
+                if (field == FIELD_GF256) {
+                    potencias[s][i] = Gf256.LOG[val];
+                    val = Gf256.mul(val, s + 1);
+                } else {
+                    potencias[s][i] = val;
+                    val = Gf257.reduce(val * x);
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates a field id.
+     * @param field The field id
+     * @throws IllegalArgumentException If the field is unknown
+     */
+    public static void checkField(int field) {
+        if (field != FIELD_GF257 && field != FIELD_GF256) {
+            throw new IllegalArgumentException("Campo de sombras desconocido: " + field);
+        }
+    }
+
+    public int getField() {
+        return field;
+    }
+
+    /**
+     * Evaluates the polynomial whose coefficients start at offset using Horner's rule.
+     * @param coeficientes The array holding the coefficients (unsigned bytes, lowest degree first)
+     * @param offset The index of the independent term
+     * @param sombraId The shadow id (1..n)
+     * @return The value of the polynomial in [0, 256] ([0, 255] over GF(2^8))
+     */
+    public int evaluate(byte[] coeficientes, int offset, int sombraId) {
+        if (field == FIELD_GF256) {
+            int resultado = 0;
+            for (int i = k - 1; i >= 0; i--) {
+                resultado = Gf256.mul(resultado, sombraId) ^ Byte.toUnsignedInt(coeficientes[offset + i]);
+            }
+            return resultado;
+        }
+        int x = sombraId % MOD;
+        int resultado = 0;
+        for (int i = k - 1; i >= 0; i--) {
+            resultado = Gf257.reduce(resultado * x + Byte.toUnsignedInt(coeficientes[offset + i]));
+        }
+        return resultado;
+    }
+
+    /**
+     * Evaluates the polynomial for every shadow.
+     * @param coeficientes The array holding the coefficients
+     * @param offset The index of the independent term
+     * @param valores Output array of length n, valores[s] is the value for shadow s + 1
+     */
+    public void evaluateAll(byte[] coeficientes, int offset, int[] valores) {
+        if (field == FIELD_GF256) {
+            for (int s = 0; s < n; s++) {
+                int[] logPotencias = potencias[s];
+                int valor = 0;
+                for (int i = 0; i < k; i++) {
+                    valor ^= Gf256.EXP[Gf256.LOG[coeficientes[offset + i] & 0xFF] + logPotencias[i]];
+                }
+                valores[s] = valor;
+            }
+            return;
+        }
+        // Each term is below 257^2, so the k of them are added up before the only reduction
+        for (int s = 0; s < n; s++) {
+            int[] p = potencias[s];
+            int acc = 0;
+            for (int i = 0; i < k; i++) {
+                acc += (coeficientes[offset + i] & 0xFF) * p[i];
+            }
+            valores[s] = Gf257.reduce(acc);
+        }
+    }
+
+    /**
+     * Evaluates the polynomial for every shadow and, if any value is 256, lowers the first
+     * nonzero coefficient (in place) so every value fits in a byte.
+     * The result is the same as decrementing that coefficient one unit at a time until no
+     * value is 256 (moving on to the next coefficient once it reaches zero), but the
+     * smallest valid decrement is found directly from the precomputed powers, and the
+     * values are updated only once per coefficient. Over GF(2^8) this is plain evaluation.
+     * @param coeficientes The array holding the coefficients, modified if an adjustment is needed
+     * @param offset The index of the independent term
+     * @param valores Output array of length n with the values in [0, 255]
+     * @throws IllegalStateException If every coefficient is already zero
+     */
+    public void evaluateAvoiding256(byte[] coeficientes, int offset, int[] valores) {
+        evaluateAll(coeficientes, offset, valores);
+        if (field == FIELD_GF256 || !contains256(valores)) {
+            return;
+        }
+        bloquesAjustados.increment();
+        for (int i = 0; i < k; i++) {
+            int coef = Byte.toUnsignedInt(coeficientes[offset + i]);
+            if (coef == 0) {
+                continue;
+            }
+            int decremento = smallestValidDecrement(valores, i, coef);
+            // If no decrement up to coef avoids 256, the coefficient goes to zero and the next one is used
+            int aplicado = (decremento > 0) ? decremento : coef;
+            coeficientes[offset + i] = (byte) (coef - aplicado);
+            for (int s = 0; s < n; s++) {
+                valores[s] = Gf257.subMul(valores[s], aplicado, potencias[s][i]);
+            }
+            unidadesDecrementadas.add(aplicado);
+            if (decremento > 0) {
+                return;
+            }
+        }
+        throw new IllegalStateException("All coefficients are zero; cannot decrement further.");
+    }
+
+    /**
+     * Evaluates blocks [desde, hasta) of the coefficients, adjusted as by {@link #evaluateAvoiding256},
+     * and writes the value of shadow s + 1 for block j to valores[s][j]. With the SIMD backend
+     * (see {@link Simd}) GF(257) blocks are evaluated several at once, one per vector lane, and
+     * only the blocks that hit 256 go through the scalar adjustment.
+     * @param coeficientes The array holding the coefficients, k per block, modified if an adjustment is needed
+     * @param desde The first block
+     * @param hasta The end of the blocks (exclusive)
+     * @param valores Output arrays, one per shadow
+     */
+    public void evaluateBlocks(byte[] coeficientes, int desde, int hasta, byte[][] valores) {
+        int[] v = new int[n];
+        Simd.Kernels simd = Simd.kernels();
+        if (simd != null && field == FIELD_GF257) {
+            int[] pendientes = new int[hasta - desde];
+            int cantidad = simd.evaluateGf257(coeficientes, k, potencias, desde, hasta, valores, pendientes);
+            for (int p = 0; p < cantidad; p++) {
+                int j = pendientes[p];
+                evaluateAvoiding256(coeficientes, j * k, v);
+                for (int s = 0; s < n; s++) {
+                    valores[s][j] = (byte) v[s];
+                }
+            }
+            return;
+        }
+        for (int j = desde; j < hasta; j++) {
+            evaluateAvoiding256(coeficientes, j * k, v);
+            for (int s = 0; s < n; s++) {
+                valores[s][j] = (byte) v[s];
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest d in [1, max] such that lowering coefficient i by d leaves no value
+     * equal to 256, or 0 if there is none.
+     */
+    private int smallestValidDecrement(int[] valores, int i, int max) {
+        for (int d = 1; d <= max; d++) {
+            boolean valido = true;
+            for (int s = 0; s < n && valido; s++) {
+                valido = Gf257.subMul(valores[s], d, potencias[s][i]) != 256;
+            }
+            if (valido) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    private boolean contains256(int[] valores) {
+        for (int s = 0; s < n; s++) {
+            if (valores[s] == 256) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of polynomials whose coefficients had to be lowered to avoid 256.
+     * @return The number of adjusted polynomials
+     */
+    public long getAdjustedBlocks() {
+        return bloquesAjustados.sum();
+    }
+
+    /**
+     * Returns the total amount subtracted from coefficients to avoid 256.
+     * @return The sum of all decrements
+     */
+    public long getDecrementedUnits() {
+        return unidadesDecrementadas.sum();
+    }
+}
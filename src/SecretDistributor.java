@@ -1,7 +1,8 @@
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Distributes a permuted secret into n shadow images using Shamir's Secret Sharing and LSB steganography.
@@ -14,6 +15,14 @@ public class SecretDistributor {
     private final int secretWidth;
     private final int secretHeight;
     private final BmpImage secretImage;
+    private final ShadowMetadata metadata = new ShadowMetadata();
+    private String outputDir = "resources/sombras";
+    private CarrierCache carrierCache;
+    private boolean contenedores;
+    private boolean comprimir;
+    private PhaseStats stats = new PhaseStats("distribute");
+    private long polinomiosAjustados;
+    private long unidadesDecrementadas;
 
     /**
      * Constructs a SecretDistributor.
@@ -47,6 +56,91 @@ public class SecretDistributor {
         this.dir = dir;
     }
 
+    /**
+     * Sets the version of the permutation table used to permute the secret, which is
+     * recorded in the shadows so the recoverer can invert it.
+     * @param version The permutation table version
+     */
+    public void setPermutationVersion(int version) {
+        metadata.setPermutationVersion(version);
+    }
+
+    /**
+     * Sets the field the polynomials are evaluated over, which is recorded in the shadows.
+     * Over GF(2^8) no coefficient needs to be adjusted and the secret is recovered exactly.
+     * @param field {@link PolynomialEvaluator#FIELD_GF257} (the default) or {@link PolynomialEvaluator#FIELD_GF256}
+     */
+    public void setField(int field) {
+        metadata.setField(field);
+    }
+
+    /**
+     * Records a sharing session id and the digest of the permuted secret in the shadows,
+     * so that recovery can reject shadows of other distributions and verify its output.
+     * @param sessionId The session id (see {@link ShadowDigest#newSessionId()}), or 0 for no integrity check
+     */
+    public void setSessionId(long sessionId) {
+        metadata.setSessionId(sessionId);
+    }
+
+    /**
+     * Sets the directory where the shadows are saved (resources/sombras by default).
+     * @param outputDir The output directory, which must exist
+     */
+    public void setOutputDir(String outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Saves the shares in {@link ShareContainer} files (sombraN.vss) instead of hiding them in
+     * carrier BMPs; no carriers are read. Recovery reads both kinds of shadows.
+     * @param enabled Whether to save containers
+     * @param compress Whether to deflate the shares of each container in blocks
+     */
+    public void setContainerOutput(boolean enabled, boolean compress) {
+        this.contenedores = enabled;
+        this.comprimir = compress;
+    }
+
+    /**
+     * Reads the carriers through a cache shared with other distributions instead of
+     * listing and loading them on every call.
+     * @param carrierCache The cache to use, or null to read the files directly
+     */
+    public void setCarrierCache(CarrierCache carrierCache) {
+        this.carrierCache = carrierCache;
+    }
+
+    /**
+     * Records the phases and counters of the distribution in the given stats,
+     * for instance to add them to the ones of loading and permuting the secret.
+     * @param stats The stats to record into
+     */
+    public void setStats(PhaseStats stats) {
+        this.stats = stats;
+    }
+
+    public PhaseStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns how many polynomials of the last distribution had their coefficients
+     * lowered because some shadow value was 256.
+     * @return The number of adjusted polynomials
+     */
+    public long getAdjustedPolynomials() {
+        return polinomiosAjustados;
+    }
+
+    /**
+     * Returns the total amount subtracted from the coefficients in the last distribution.
+     * @return The sum of all decrements
+     */
+    public long getDecrementedUnits() {
+        return unidadesDecrementadas;
+    }
+
     public int getCantidadPolinomios() {
         return permutedSecret.length / k;
     }
@@ -57,93 +151,180 @@ public class SecretDistributor {
      * @throws Exception If there is an error during distribution
      */
     public void distribute(int seed) throws Exception {
-        File carpeta = new File(dir);
-        File[] archivos = carpeta.listFiles((f, name) -> name.toLowerCase().endsWith(".bmp"));
-        if (archivos == null || archivos.length < n) {
-            throw new IllegalArgumentException("No hay suficientes imágenes BMP en el directorio: " + dir);
-        }
+        distribute(seed, 1);
+    }
 
-        List<BmpImage> portadoras = new ArrayList<>();
-        for (int i = 0; i < n; i++) {
-            String fileName = archivos[i].getName();
-            BmpImage portadora = new BmpImage(archivos[i].getAbsolutePath());
-            // Error if carrier is smaller than secret (for any k)
-            if (portadora.getWidth() < secretWidth || portadora.getHeight() < secretHeight) {
-                System.err.printf("Error: La imagen portadora %d (%s) es más pequeña (%dx%d) que la imagen secreta (%dx%d).\n", i + 1, fileName, portadora.getWidth(), portadora.getHeight(), secretWidth, secretHeight);
-                System.err.println("No se puede continuar. Todas las portadoras deben ser al menos del tamaño de la imagen secreta.");
-                System.exit(1);
-            }
-            // For k=8, crop the carrier image to match the secret image size
-            if (k == 8) {
-                if (portadora.getWidth() != secretWidth || portadora.getHeight() != secretHeight) {
-                    portadora = portadora.cropToSize(secretWidth, secretHeight);
-                }
-            }
-            // Use the secret image's header for all shadows
-            BmpImage img = new BmpImage(secretImage.getHeader(), portadora.getPixelData());
-            portadoras.add(img);
-        }
+    /**
+     * Distributes the permuted secret into n shadow images, splitting the polynomials
+     * and the shadows across the given number of threads. Blocks and shadows are
+     * independent, so the output is the same as the sequential one.
+     * The carriers are read, and the shadows written, by stages of a {@link Pipeline} that
+     * run while the polynomials are evaluated and the shadows embedded, so disk and CPU
+     * work overlap; only a few carriers are held in memory at a time.
+     * @param seed The seed for permutation
+     * @param threads The number of worker threads
+     * @throws Exception If there is an error during distribution
+     */
+    @SuppressWarnings("try")
+    public void distribute(int seed, int threads) throws Exception {
+        List<File> archivos = listarPortadoras();
 
         int cantidadPolinomios = getCantidadPolinomios();
 
         byte[][] valoresAOcultar = new byte[n][cantidadPolinomios];
+        PolynomialEvaluator evaluador = new PolynomialEvaluator(k, n, metadata.getField());
 
-        for (int j = 0; j < cantidadPolinomios; j++) {
-            boolean coefficientsUpdated;
-            do {
-                coefficientsUpdated = false;
-                for (int sombraId = 1; sombraId <= n; sombraId++) {
-                    int resultado = evaluarPolinomio(sombraId, j) % 257;
-                    if (resultado == 256) {
-                        boolean decremented = false;
-                        for (int i = 0; i < k; i++) {
-                            int coef = Byte.toUnsignedInt(permutedSecret[j * k + i]);
-                            if (coef != 0) {
-                                permutedSecret[j * k + i]--;
-                                decremented = true;
-                                coefficientsUpdated = true;
-                                break;
-                            }
-                        }
-                        if (!decremented) {
-                            throw new IllegalStateException("All coefficients are zero; cannot decrement further.");
+        try (Pipeline pipeline = new Pipeline();
+             ParallelExecutor executor = new ParallelExecutor(threads)) {
+            // Read the carriers while the polynomials are evaluated; the channel carries their indexes
+            byte[][] portadoras = new byte[n][];
+            Pipeline.Channel<Integer> leidas = pipeline.channel(Pipeline.DEFAULT_CAPACITY);
+            AtomicInteger siguiente = new AtomicInteger();
+            pipeline.stage(threads, leidas, () -> {
+                for (int i = siguiente.getAndIncrement(); i < n; i = siguiente.getAndIncrement()) {
+                    // Containers have no carrier: every shadow is ready once evaluated
+                    if (!contenedores) {
+                        try (PhaseStats.Timer t = stats.start("loadCarriers")) {
+                            portadoras[i] = cargarPortadora(archivos.get(i), i);
                         }
                     }
+                    leidas.put(i);
                 }
-            } while (coefficientsUpdated);
+            });
 
-            for (int i = 0; i < n; i++) {
-                int sombraId = i + 1;
-                valoresAOcultar[i][j] = (byte) (evaluarPolinomio(sombraId, j) % 257);
+            try (PhaseStats.Timer t = stats.start("evaluate")) {
+                executor.forEachRange(cantidadPolinomios,
+                        (desde, hasta) -> evaluador.evaluateBlocks(permutedSecret, desde, hasta, valoresAOcultar));
             }
-        }
+            // The coefficients were adjusted in place, so the digest covers what recovery will produce
+            if (metadata.hasIntegrity()) {
+                try (PhaseStats.Timer t = stats.start("digest")) {
+                    metadata.setDigest(ShadowDigest.compute(permutedSecret, k, threads));
+                }
+            }
+            byte[] header = metadata.applyTo(secretImage.getHeader());
 
-        for(int i=0; i<n; i++) {
-            BmpImage img = portadoras.get(i);
-            byte[] pixelData = img.getPixelData();
-            byte[] cuerpoModificado = LsbSteganography.embed(pixelData, valoresAOcultar[i]);
-            img.setPixelData(cuerpoModificado);
-            // Store seed in bytes 6-7 (little endian)
-            img.setReservedBytes(6, (short) seed);
-            // Store shadow number in bytes 8-9 (little endian)
-            img.setReservedBytes(8, (short) (i+1));
-            // Store number of polynomials in bytes 34-35
-            img.setAmountOfBytesToEmbed(34, cantidadPolinomios);
-            String nombreSalida = String.format("resources/sombras/sombra%d.bmp", (i+1));
-            img.save(nombreSalida);
+            // Embed each carrier as it arrives and write it while the next one is embedded
+            Pipeline.Channel<BmpImage> sombras = pipeline.channel(Pipeline.DEFAULT_CAPACITY);
+            pipeline.stage(threads, sombras, () -> {
+                for (Integer i = leidas.take(); i != null; i = leidas.take()) {
+                    // Use the secret image's header plus the metadata for all shadows (one copy each, they are embedded concurrently)
+                    BmpImage img = new BmpImage(header.clone(), portadoras[i]);
+                    portadoras[i] = null;
+                    if (!contenedores) {
+                        ocultar(img, valoresAOcultar[i]);
+                    }
+                    completarHeader(img, i + 1, seed, cantidadPolinomios);
+                    sombras.put(img);
+                }
+            });
+            pipeline.stage(threads, null, () -> {
+                for (BmpImage img = sombras.take(); img != null; img = sombras.take()) {
+                    // The shadow number is already in bytes 8-9
+                    int sombraId = img.getReservedBytes(8) & 0xFFFF;
+                    String extension = contenedores ? ShareContainer.EXTENSION : ".bmp";
+                    String nombreSalida = new File(outputDir, String.format("sombra%d%s", sombraId, extension)).getPath();
+                    try (PhaseStats.Timer t = stats.start("save")) {
+                        if (contenedores) {
+                            ShareContainer.write(nombreSalida, img.getHeader(), k, valoresAOcultar[sombraId - 1], comprimir);
+                        } else {
+                            img.save(nombreSalida);
+                        }
+                    }
+                }
+            });
+            pipeline.await();
         }
+        polinomiosAjustados = evaluador.getAdjustedBlocks();
+        unidadesDecrementadas = evaluador.getDecrementedUnits();
+        stats.count("polynomials", cantidadPolinomios);
+        stats.count("shadows", n);
+        stats.count("adjustedPolynomials", polinomiosAjustados);
+        stats.count("decrementedUnits", unidadesDecrementadas);
+        if (!contenedores) {
+            stats.count("embeddedBytes", (long) n * cantidadPolinomios);
+        }
+    }
+
+    /**
+     * Checks that the carrier directory has at least n BMP images, so that a distribution can
+     * be rejected before touching the output directory. Does nothing for containers.
+     * @throws IllegalArgumentException If there are not enough carriers
+     */
+    public void checkCarriers() {
+        listarPortadoras();
+    }
 
+    /**
+     * Lists the carriers, or returns null for containers, which have none.
+     */
+    private List<File> listarPortadoras() {
+        if (contenedores) {
+            return null;
+        }
+        List<File> archivos;
+        if (carrierCache != null) {
+            archivos = carrierCache.listCarriers(dir);
+        } else {
+            File[] encontrados = new File(dir).listFiles((f, name) -> name.toLowerCase().endsWith(".bmp"));
+            archivos = (encontrados == null) ? null : Arrays.asList(encontrados);
+        }
+        if (archivos == null || archivos.size() < n) {
+            throw new IllegalArgumentException("No hay suficientes imágenes BMP en el directorio: " + dir);
+        }
+        return archivos;
     }
 
+    /**
+     * Loads carrier i, checks it against the secret and returns its pixel data,
+     * cropped to the secret size for k=8.
+     */
+    private byte[] cargarPortadora(File archivo, int i) throws IOException {
+        String fileName = archivo.getName();
+        // For k=8 the cache keeps the carrier already cropped to the secret size
+        BmpImage portadora = (carrierCache != null)
+                ? carrierCache.get(archivo, k == 8 ? secretWidth : 0, k == 8 ? secretHeight : 0)
+                : new BmpImage(archivo.getAbsolutePath());
+        // Error if carrier is smaller than secret (for any k)
+        if (portadora.getWidth() < secretWidth || portadora.getHeight() < secretHeight) {
+            throw new IllegalArgumentException(String.format("La imagen portadora %d (%s) es más pequeña (%dx%d) que la imagen secreta (%dx%d). " +
+                    "Todas las portadoras deben ser al menos del tamaño de la imagen secreta.", i + 1, fileName, portadora.getWidth(), portadora.getHeight(), secretWidth, secretHeight));
+        }
+        // The shadow keeps the header of the secret, so the carrier pixels must have its layout
+        if (portadora.getBitsPerPixel() != secretImage.getBitsPerPixel()) {
+            throw new IllegalArgumentException(String.format("La imagen portadora %d (%s) es de %d bits por píxel y la imagen secreta de %d. " +
+                    "Las portadoras deben tener la misma profundidad de color que el secreto.", i + 1, fileName, portadora.getBitsPerPixel(), secretImage.getBitsPerPixel()));
+        }
+        // For k=8, crop the carrier image to match the secret image size
+        if (k == 8) {
+            if (portadora.getWidth() != secretWidth || portadora.getHeight() != secretHeight) {
+                portadora = portadora.cropToSize(secretWidth, secretHeight);
+            }
+        }
+        return portadora.getPixelData();
+    }
 
-    private int evaluarPolinomio(int sombraId, int j) {
-        int inicio = j * k;
-        int resultado = 0;
-        for (int i = 0; i < k; i++) {
-            int coeficiente = Byte.toUnsignedInt(permutedSecret[inicio + i]);
-            resultado += coeficiente * (int) Math.pow(sombraId, i);
+    /**
+     * Embeds the values of one shadow into its carrier.
+     */
+    @SuppressWarnings("try")
+    private void ocultar(BmpImage img, byte[] valores) {
+        try (PhaseStats.Timer t = stats.start("embed")) {
+            byte[] cuerpoModificado = LsbSteganography.embed(img.getPixelData(), valores);
+            img.setPixelData(cuerpoModificado);
         }
-        return resultado;
+    }
+
+    /**
+     * Sets the seed, the shadow number and the number of polynomials in the shadow header.
+     */
+    private static void completarHeader(BmpImage img, int sombraId, int seed, int cantidadPolinomios) {
+        // Store seed in bytes 6-7 (little endian)
+        img.setReservedBytes(6, (short) seed);
+        // Store shadow number in bytes 8-9 (little endian)
+        img.setReservedBytes(8, (short) sombraId);
+        // Store number of polynomials in bytes 34-35
+        img.setAmountOfBytesToEmbed(34, cantidadPolinomios);
     }
 
 }
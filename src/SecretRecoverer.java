@@ -1,15 +1,33 @@
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Recovers a secret from k shadow images using Shamir's Secret Sharing and LSB steganography.
+ * Before mapping any pixel data, the headers of all the shadows in the directory are read once
+ * into a {@link ShadowIndex}: shadows of another distribution are rejected, and only the k
+ * shadows it selects are mapped and read. Shadows with an integrity check also get the
+ * recovered secret verified against their digest.
  */
 public class SecretRecoverer {
+    private static final int BLOQUES_MUESTRA = 256;
+
     private final int k;
     private final String dir;
+    private PhaseStats stats = new PhaseStats("recover");
+    private ShadowIndex index;
+    private ShadowMetadata metadata;
+    private byte[] headerMapeado;
+    private boolean verificado;
+    private boolean corregirErrores;
+    private List<String> nombresMapeados = new ArrayList<>();
+    private List<String> sombrasDefectuosas = new ArrayList<>();
 
     /**
      * Constructs a SecretRecoverer.
@@ -32,132 +50,700 @@ public class SecretRecoverer {
     }
 
     /**
-     * Gets the permutation seed from the first shadow image.
+     * Records the phases and counters of the recovery in the given stats.
+     * @param stats The stats to record into
+     */
+    public void setStats(PhaseStats stats) {
+        this.stats = stats;
+    }
+
+    public PhaseStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Uses an index of the directory that was already scanned, instead of scanning it again.
+     * @param index The index of the shadows of the directory
+     */
+    public void setIndex(ShadowIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Returns the index of the shadows of the directory, scanning their headers the first time.
+     * @return The index
+     * @throws IOException If a shadow header cannot be read
+     */
+    @SuppressWarnings("try")
+    public ShadowIndex getIndex() throws IOException {
+        if (index == null) {
+            try (PhaseStats.Timer t = stats.start("scanShadows")) {
+                index = ShadowIndex.scan(dir);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Uses every shadow of the directory instead of k of them, so that wrong values in up to
+     * (m - k) / 2 of the m shadows are corrected (see {@link BerlekampWelch}). Faulty shadows
+     * are found by decoding a sample of blocks; the rest of the blocks are solved with k good
+     * shadows and checked against the others, and only the blocks that disagree are decoded.
+     * @param corregirErrores Whether to correct errors
+     */
+    public void setErrorCorrection(boolean corregirErrores) {
+        this.corregirErrores = corregirErrores;
+    }
+
+    /**
+     * Returns the shadows found to have wrong values by the last recovery with error correction.
+     * @return The file names of the faulty shadows
+     */
+    public List<String> getFaultyShadows() {
+        return sombrasDefectuosas;
+    }
+
+    /**
+     * Whether the last {@link #recover(int)} checked the secret against the digest of the shadows.
+     * Shadows without an integrity check, and partial recoveries, are not verified.
+     * @return true if the recovered secret was verified
+     */
+    public boolean isVerified() {
+        return verificado;
+    }
+
+    /**
+     * Gets the permutation seed of the shadows, from the index.
      * @return The seed value
      */
     public short getSeed() {
+        return (short) indice().getSeed();
+    }
+
+    /**
+     * Gets the permutation table version recorded in the shadows, from the index.
+     * Legacy shadows (without a metadata block) use {@link PermutationTable#VERSION_LEGACY}.
+     * @return The permutation table version
+     */
+    public int getPermutationVersion() {
+        return indice().getMetadata().getPermutationVersion();
+    }
+
+    /**
+     * Gets the header of the secret image, without the shadow metadata: the header of the
+     * first shadow mapped by the last recovery, or else of the first shadow the index selects.
+     * @return The header to save the recovered secret with
+     */
+    public byte[] getSecretHeader() {
+        if (headerMapeado != null) {
+            return ShadowMetadata.strip(headerMapeado);
+        }
         try {
-            File carpeta = new File(dir);
-            File[] archivos = carpeta.listFiles((d, name) -> name.endsWith(".bmp"));
-            if (archivos == null || archivos.length == 0) {
+            ShadowIndex.Entry primera = indice().select(1).get(0);
+            String path = primera.getFile().getAbsolutePath();
+            byte[] header = primera.isContainer() ? ShareContainer.readHeader(path) : BmpImage.readHeader(path);
+            return ShadowMetadata.strip(header);
+        } catch (IOException e) {
+            throw new RuntimeException("Error leyendo el header de la primera sombra", e);
+        }
+    }
+
+    private ShadowIndex indice() {
+        try {
+            ShadowIndex indice = getIndex();
+            if (indice.size() == 0) {
                 throw new IOException("No se encontraron sombras en el directorio: " + dir);
             }
-            BmpImage sombra = new BmpImage(archivos[0].getAbsolutePath());
-            return sombra.getReservedBytes(6);
+            return indice;
         } catch (IOException e) {
-            throw new RuntimeException("Error leyendo la primera sombra para obtener la semilla", e);
+            throw new RuntimeException("Error leyendo los headers de las sombras", e);
         }
     }
 
     /**
-     * Recovers the permuted secret from k randomly selected shadow images.
+     * Recovers the permuted secret from the k shadow images selected by the index.
      * @return The recovered permuted secret
-     * @throws IOException If there is an error during recovery
+     * @throws Exception If there is an error during recovery
      */
-    public byte[] recover() throws IOException {
-        File carpeta = new File(dir);
-        File[] archivos = carpeta.listFiles((d, name) -> name.endsWith(".bmp"));
-        if (archivos == null || archivos.length < k) {
-            throw new IllegalArgumentException("No hay al menos " + k + " sombras en el directorio.");
+    public byte[] recover() throws Exception {
+        return recover(1);
+    }
+
+    /**
+     * Recovers the permuted secret from the k shadow images selected by the index (or from all of them,
+     * correcting errors, see {@link #setErrorCorrection(boolean)}), extracting the shadows and
+     * solving the polynomial blocks across the given number of threads. The next shadows are
+     * read from disk while the previous ones are extracted.
+     * @param threads The number of worker threads
+     * @return The recovered permuted secret
+     * @throws Exception If there is an error during recovery
+     */
+    @SuppressWarnings("try")
+    public byte[] recover(int threads) throws Exception {
+        byte[] recoveredPermuted = corregirErrores ? recuperarCorrigiendo(threads) : recuperarConK(threads);
+        verificado = false;
+        if (metadata.hasIntegrity()) {
+            long digest;
+            try (PhaseStats.Timer t = stats.start("verify")) {
+                digest = ShadowDigest.compute(recoveredPermuted, k, threads);
+            }
+            if (digest != metadata.getDigest()) {
+                throw new IllegalStateException("El secreto recuperado no coincide con el digest de las sombras: " +
+                        "alguna de las sombras usadas está dañada.");
+            }
+            verificado = true;
+            stats.count("verified", 1);
         }
-        List<File> lista = new ArrayList<>();
-        Collections.addAll(lista, archivos);
-        Collections.shuffle(lista);
-        List<BmpImage> sombras = new ArrayList<>();
-        int[] sombraIds = new int[k];
-        for (int i = 0; i < k; i++) {
-            BmpImage bmp = new BmpImage(lista.get(i).getAbsolutePath());
-            sombras.add(bmp);
-            sombraIds[i] = bmp.getReservedBytes(8);
-        }
-        BmpImage auxShadow = sombras.getFirst();
+        return recoveredPermuted;
+    }
+
+    @SuppressWarnings("try")
+    private byte[] recuperarConK(int threads) throws Exception {
+        List<Sombra> sombras;
+        int[] sombraIds;
         int q;
-        if(k != 8) {
-            q = auxShadow.getIntFromHeader(34);
-        } else {
-            q = auxShadow.getPixelData().length / k;
+        try (PhaseStats.Timer t = stats.start("mapShadows")) {
+            sombras = mapearSombras(k);
+            sombraIds = idsDe(sombras);
+            q = cantidadPolinomios(sombras.get(0));
         }
-        if (q <= 0) {
-            throw new IllegalArgumentException("Valor de q inválido: " + q);
-        }
-        byte[][] extracted = new byte[k][q];
-        for (int i = 0; i < k; i++) {
-            extracted[i] = LsbSteganography.extract(sombras.get(i).getPixelData(), q);
+        int[] inversa;
+        try (PhaseStats.Timer t = stats.start("invert")) {
+            inversa = invertir(sombraIds);
         }
+        byte[][] extracted = extraer(sombras, q, threads);
         byte[] recoveredPermuted = new byte[q * k];
-        for (int j = 0; j < q; j++) {
-            int[] y = new int[k];
-            for (int i = 0; i < k; i++) {
-                int aux = Byte.toUnsignedInt(extracted[i][j]);
-                y[i] = aux;
-            }
-            int[] x = sombraIds;
-            int[][] A = new int[k][k];
-            for (int row = 0; row < k; row++) {
-                int xi = x[row];
-                int val = 1;
-                for (int col = 0; col < k; col++) {
-                    A[row][col] = val;
-                    val = (val * xi) % 257;
+        try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+            try (PhaseStats.Timer t = stats.start("solve")) {
+                if (metadata.getField() == PolynomialEvaluator.FIELD_GF256) {
+                    executor.forEachRange(q, (desde, hasta) -> resolverBloquesGf256(inversa, extracted, desde, hasta, recoveredPermuted));
+                } else {
+                    executor.forEachRange(q, (desde, hasta) -> resolverBloques(inversa, extracted, desde, hasta, recoveredPermuted));
                 }
             }
-            int[] coef = gaussMod(A, y, 257);
-            for (int i = 0; i < k; i++) {
-                int index = j * k + i;
-                recoveredPermuted[index] = (byte) coef[i];
-            }
         }
+        stats.count("polynomials", q);
+        stats.count("shadows", k);
         return recoveredPermuted;
     }
 
     /**
-     * Solves a system of linear equations modulo mod using Gauss-Jordan elimination.
+     * Recovers the permuted secret from all the m shadows of the directory, correcting errors.
+     */
+    @SuppressWarnings("try")
+    private byte[] recuperarCorrigiendo(int threads) throws Exception {
+        List<Sombra> sombras;
+        int[] sombraIds;
+        int q;
+        try (PhaseStats.Timer t = stats.start("mapShadows")) {
+            sombras = mapearSombras(Integer.MAX_VALUE);
+            sombraIds = idsDe(sombras);
+            q = cantidadPolinomios(sombras.get(0));
+        }
+        if (metadata.getField() != PolynomialEvaluator.FIELD_GF257) {
+            throw new IllegalArgumentException("La corrección de errores solo está disponible para sombras en GF(257).");
+        }
+        int m = sombras.size();
+        byte[][] extracted = extraer(sombras, q, threads);
+        try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+            // Decode a sample of blocks with all the shadows to find the faulty ones
+            AtomicLongArray erroresPorSombra = new AtomicLongArray(m);
+            try (PhaseStats.Timer t = stats.start("detect")) {
+                BerlekampWelch decodificador = new BerlekampWelch(sombraIds, k);
+                if (decodificador.getMaxErrors() > 0) {
+                    int muestras = Math.min(q, BLOQUES_MUESTRA);
+                    int[] y = new int[m];
+                    int[] coef = new int[k];
+                    boolean[] erroneas = new boolean[m];
+                    for (int s = 0; s < muestras; s++) {
+                        int j = (int) ((long) s * q / muestras);
+                        valoresDe(extracted, j, y);
+                        if (decodificador.decode(y, coef, erroneas) > 0) {
+                            for (int i = 0; i < m; i++) {
+                                if (erroneas[i]) {
+                                    erroresPorSombra.incrementAndGet(i);
+                                }
+                            }
+                        }
+                    }
+                    stats.count("sampledBlocks", muestras);
+                }
+            }
+
+            // k good shadows solve every block; the other good ones check it. If the sample left
+            // fewer than k good shadows (small errors scattered over many of them), every block
+            // goes through the decoder, which still corrects up to (m - k) / 2 wrong values per block
+            int[] orden = new int[m];
+            int buenas = 0;
+            for (int i = 0; i < m; i++) {
+                if (erroresPorSombra.get(i) == 0) {
+                    orden[buenas++] = i;
+                }
+            }
+            boolean decodificarTodo = buenas < k;
+            int[] elegidas = Arrays.copyOf(orden, k);
+            int[] control = decodificarTodo ? new int[0] : Arrays.copyOfRange(orden, k, buenas);
+            int[] inversa;
+            if (decodificarTodo) {
+                inversa = null;
+                stats.count("decodedAllBlocks", 1);
+            } else {
+                int[] elegidasIds = new int[k];
+                for (int i = 0; i < k; i++) {
+                    elegidasIds[i] = sombraIds[elegidas[i]];
+                }
+                try (PhaseStats.Timer t = stats.start("invert")) {
+                    inversa = Gf257.invertVandermonde(elegidasIds);
+                }
+            }
+
+            byte[] recoveredPermuted = new byte[q * k];
+            LongAdder corregidos = new LongAdder();
+            try (PhaseStats.Timer t = stats.start("solve")) {
+                executor.forEachRange(q, (desde, hasta) -> {
+                    BerlekampWelch decodificador = new BerlekampWelch(sombraIds, k);
+                    int[] y = new int[m];
+                    int[] yElegidas = new int[k];
+                    int[] coef = new int[k];
+                    boolean[] erroneas = new boolean[m];
+                    for (int j = desde; j < hasta; j++) {
+                        valoresDe(extracted, j, y);
+                        if (!decodificarTodo) {
+                            for (int r = 0; r < k; r++) {
+                                yElegidas[r] = y[elegidas[r]];
+                            }
+                            for (int i = 0; i < k; i++) {
+                                coef[i] = Gf257.dot(inversa, i * k, yElegidas, k);
+                            }
+                        }
+                        if (decodificarTodo || !coincide(coef, control, sombraIds, y)) {
+                            int errores = decodificador.decode(y, coef, erroneas);
+                            if (errores < 0) {
+                                throw new IllegalStateException("El bloque " + j + " tiene más errores de los que se pueden corregir con " + m + " sombras.");
+                            }
+                            for (int i = 0; i < m; i++) {
+                                if (erroneas[i]) {
+                                    erroresPorSombra.incrementAndGet(i);
+                                }
+                            }
+                            if (errores > 0) {
+                                corregidos.increment();
+                            }
+                        }
+                        for (int i = 0; i < k; i++) {
+                            recoveredPermuted[j * k + i] = (byte) coef[i];
+                        }
+                    }
+                });
+            }
+
+            // The shadows left out by the header check are faulty too
+            sombrasDefectuosas = new ArrayList<>(getIndex().getRejected());
+            for (int i = 0; i < m; i++) {
+                if (erroresPorSombra.get(i) > 0) {
+                    sombrasDefectuosas.add(nombresMapeados.get(i));
+                }
+            }
+            stats.count("polynomials", q);
+            stats.count("shadows", m);
+            stats.count("faultyShadows", sombrasDefectuosas.size());
+            stats.count("correctedBlocks", corregidos.sum());
+            return recoveredPermuted;
+        }
+    }
+
+    /**
+     * Extracts the payload of every mapped shadow. A read stage loads the pages of the next
+     * shadows while the previous ones are extracted, so waiting for the disk overlaps with
+     * extraction instead of stalling it on every page fault.
+     */
+    @SuppressWarnings("try")
+    private byte[][] extraer(List<Sombra> sombras, int q, int threads) throws Exception {
+        int cantidad = sombras.size();
+        byte[][] extracted = new byte[cantidad][];
+        try (Pipeline pipeline = new Pipeline()) {
+            Pipeline.Channel<Integer> leidas = pipeline.channel(Pipeline.DEFAULT_CAPACITY);
+            AtomicInteger siguiente = new AtomicInteger();
+            pipeline.stage(threads, leidas, () -> {
+                for (int i = siguiente.getAndIncrement(); i < cantidad; i = siguiente.getAndIncrement()) {
+                    try (PhaseStats.Timer t = stats.start("readShadows")) {
+                        sombras.get(i).load();
+                    }
+                    leidas.put(i);
+                }
+            });
+            pipeline.stage(threads, null, () -> {
+                for (Integer i = leidas.take(); i != null; i = leidas.take()) {
+                    try (PhaseStats.Timer t = stats.start("extract")) {
+                        extracted[i] = sombras.get(i).extract(q);
+                    }
+                }
+            });
+            pipeline.await();
+        }
+        return extracted;
+    }
+
+    private static void valoresDe(byte[][] extracted, int j, int[] y) {
+        for (int i = 0; i < y.length; i++) {
+            y[i] = Byte.toUnsignedInt(extracted[i][j]);
+        }
+    }
+
+    /**
+     * Whether the polynomial with the given coefficients takes the values y at the control shadows.
+     */
+    private static boolean coincide(int[] coef, int[] control, int[] sombraIds, int[] y) {
+        for (int c : control) {
+            int x = sombraIds[c];
+            int valor = 0;
+            for (int t = coef.length - 1; t >= 0; t--) {
+                valor = Gf257.reduce(valor * x + coef[t]);
+            }
+            if (valor != y[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recovers bytes [desde, hasta) of the secret pixel data, already unpermuted, solving only
+     * the polynomial blocks that hold them and reading only the LSBs of those blocks from the
+     * memory mapped shadows.
+     * @param desde The first byte of the range
+     * @param hasta The end of the range (exclusive)
+     * @return The secret bytes of the range
+     * @throws Exception If there is an error during recovery
+     */
+    @SuppressWarnings("try")
+    public byte[] recoverRange(long desde, long hasta) throws Exception {
+        Region region = abrirRegion();
+        long length = (long) region.q * k;
+        if (desde < 0 || hasta > length || desde > hasta) {
+            throw new IllegalArgumentException(String.format("Rango inválido [%d, %d) para un secreto de %d bytes", desde, hasta, length));
+        }
+        byte[] out = new byte[(int) (hasta - desde)];
+        try (PhaseStats.Timer t = stats.start("solveRange")) {
+            region.resolver((int) desde, (int) hasta, out, 0);
+        }
+        return out;
+    }
+
+    /**
+     * Recovers a rectangle of the secret image as a BMP image of that size, solving only the
+     * polynomial blocks of its rows.
+     * @param x The left column of the rectangle
+     * @param y The top row of the rectangle (0 is the top of the image)
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     * @return The recovered rectangle, with the palette (if any) of the secret
+     * @throws Exception If there is an error during recovery
+     */
+    @SuppressWarnings("try")
+    public BmpImage recoverRegion(int x, int y, int width, int height) throws Exception {
+        Region region = abrirRegion();
+        byte[] header = ShadowMetadata.strip(region.sombras.get(0).header);
+        BmpImage secreto = new BmpImage(header, null);
+        int imageWidth = secreto.getWidth();
+        int imageHeight = secreto.getHeight();
+        if (x < 0 || y < 0 || width < 1 || height < 1 || x + width > imageWidth || y + height > imageHeight) {
+            throw new IllegalArgumentException(String.format("La región %d,%d %dx%d no está dentro de la imagen de %dx%d",
+                    x, y, width, height, imageWidth, imageHeight));
+        }
+        // BMP: filas de abajo hacia arriba, con padding por fila
+        int bytesPerPixel = secreto.getBytesPerPixel();
+        int rowSize = secreto.getRowSize();
+        int targetRowSize = BmpImage.rowSize(width, secreto.getBitsPerPixel());
+        if ((long) rowSize * imageHeight > (long) region.q * k) {
+            throw new IllegalArgumentException("Las sombras no contienen una imagen de " + secreto.getBitsPerPixel() +
+                    " bits de " + imageWidth + "x" + imageHeight);
+        }
+        byte[] pixels = new byte[targetRowSize * height];
+        try (PhaseStats.Timer t = stats.start("solveRange")) {
+            for (int r = 0; r < height; r++) {
+                // All the channels of a row segment are contiguous: one range per row
+                int desde = (imageHeight - 1 - (y + r)) * rowSize + x * bytesPerPixel;
+                region.resolver(desde, desde + width * bytesPerPixel, pixels, (height - 1 - r) * targetRowSize);
+            }
+        }
+        return new BmpImage(BmpImage.headerWithSize(header, width, height, pixels.length), pixels);
+    }
+
+    @SuppressWarnings("try")
+    private Region abrirRegion() throws IOException {
+        Region region;
+        try (PhaseStats.Timer t = stats.start("mapShadows")) {
+            List<Sombra> sombras = mapearSombras(k);
+            region = new Region(sombras, cantidadPolinomios(sombras.get(0)));
+        }
+        try (PhaseStats.Timer t = stats.start("invert")) {
+            region.inversa = invertir(idsDe(region.sombras));
+        }
+        return region;
+    }
+
+    /**
+     * The k mapped shadows of a partial recovery and the inverse of their Vandermonde matrix.
      */
-    private int[] gaussMod(int[][] A, int[] b, int mod) {
-        int n = A.length;
-        int[][] M = new int[n][n + 1];
-        for (int i = 0; i < n; i++) {
-            System.arraycopy(A[i], 0, M[i], 0, n);
-            M[i][n] = b[i];
+    private class Region {
+        final List<Sombra> sombras;
+        final int q;
+        final int seed;
+        final int version;
+        final int field;
+        int[] inversa;
+
+        Region(List<Sombra> sombras, int q) {
+            this.sombras = sombras;
+            this.q = q;
+            byte[] header = sombras.get(0).header;
+            this.seed = new BmpImage(header, null).getReservedBytes(6) & 0xFFFF;
+            ShadowMetadata metadata = ShadowMetadata.read(header);
+            this.version = metadata.getPermutationVersion();
+            this.field = metadata.getField();
         }
-        for (int i = 0; i < n; i++) {
-            int inv = modInverse(M[i][i], mod);
-            for (int j = i; j <= n; j++) {
-                M[i][j] = (M[i][j] * inv) % mod;
+
+        /**
+         * Writes secret bytes [desde, hasta) to out[offset...], unpermuted.
+         */
+        void resolver(int desde, int hasta, byte[] out, int offset) throws IOException {
+            if (desde == hasta) {
+                return;
             }
-            for (int r = 0; r < n; r++) {
-                if (r != i) {
-                    int factor = M[r][i];
-                    for (int j = i; j <= n; j++) {
-                        M[r][j] = (M[r][j] - factor * M[i][j] % mod + mod) % mod;
+            int primero = desde / k;
+            int ultimo = (hasta - 1) / k;
+            byte[] bloques = new byte[(ultimo - primero + 1) * k];
+            int[] y = new int[k];
+            for (int j = primero; j <= ultimo; j++) {
+                for (int i = 0; i < k; i++) {
+                    y[i] = Byte.toUnsignedInt(sombras.get(i).extractAt(j));
+                }
+                for (int i = 0; i < k; i++) {
+                    int acc = 0;
+                    if (field == PolynomialEvaluator.FIELD_GF256) {
+                        for (int r = 0; r < k; r++) {
+                            acc ^= Gf256.mul(inversa[i * k + r], y[r]);
+                        }
+                    } else {
+                        acc = Gf257.dot(inversa, i * k, y, k);
                     }
+                    bloques[(j - primero) * k + i] = (byte) acc;
                 }
             }
+            stats.count("polynomials", ultimo - primero + 1);
+            PermutationTable.xorKeystream(version, seed, (long) primero * k, bloques, 0, bloques.length);
+            System.arraycopy(bloques, desde - primero * k, out, offset, hasta - desde);
         }
-        int[] x = new int[n];
-        for (int i = 0; i < n; i++) {
-            x[i] = M[i][n];
+    }
+
+    /**
+     * Maps the given number of shadows of the directory, as selected by {@link ShadowIndex#select(int)}
+     * (all of them, if there are fewer), after checking from the index that all the shadows of
+     * the directory belong to the same distribution. With error correction, shadows of another
+     * distribution (or with a damaged header) are left out and reported as faulty instead, and the
+     * majority is decoded. BMP shadows and share containers can be mixed.
+     */
+    private List<Sombra> mapearSombras(int cantidad) throws IOException {
+        ShadowIndex indice = getIndex();
+        if (indice.size() < k) {
+            throw new IllegalArgumentException("No hay al menos " + k + " sombras en el directorio.");
+        }
+        List<String> rechazadas = indice.getRejected();
+        if (!rechazadas.isEmpty()) {
+            stats.count("rejectedShadows", rechazadas.size());
+        }
+        if (!rechazadas.isEmpty() && !corregirErrores) {
+            throw new IllegalArgumentException("Las sombras " + rechazadas + " no pertenecen a la misma distribución que las otras " +
+                    indice.getEntries().size() + " sombras; quítelas del directorio " + dir);
+        }
+        metadata = indice.getMetadata();
+        List<ShadowIndex.Entry> elegidas = indice.select(cantidad);
+        if (elegidas.size() < k) {
+            throw new IllegalArgumentException("No hay al menos " + k + " sombras distintas en el directorio: solo " + elegidas.size());
+        }
+        List<Sombra> sombras = new ArrayList<>();
+        nombresMapeados = new ArrayList<>();
+        for (ShadowIndex.Entry entrada : elegidas) {
+            sombras.add(abrir(entrada.getFile()));
+            nombresMapeados.add(entrada.getFile().getName());
+        }
+        headerMapeado = sombras.get(0).header;
+        stats.count("skippedShadows", indice.size() - elegidas.size());
+        return sombras;
+    }
+
+    private Sombra abrir(File archivo) throws IOException {
+        if (!ShareContainer.isContainer(archivo.getName())) {
+            return new SombraBmp(BmpImage.map(archivo.getAbsolutePath()));
+        }
+        ShareContainer contenedor = ShareContainer.open(archivo.getAbsolutePath());
+        if (contenedor.getK() != k) {
+            throw new IllegalArgumentException("La sombra " + archivo.getName() + " se creó con k=" + contenedor.getK() + ", no con k=" + k);
+        }
+        return new SombraContenedor(contenedor);
+    }
+
+    /**
+     * A shadow opened for recovery: a memory mapped BMP with the shares in its LSBs, or a
+     * {@link ShareContainer} with the shares as they are.
+     */
+    private abstract static class Sombra {
+        final byte[] header;
+
+        Sombra(byte[] header) {
+            this.header = header;
+        }
+
+        /**
+         * Reads the pages of the shadow into memory.
+         */
+        abstract void load();
+
+        /**
+         * @return The number of polynomials hidden in the shadow
+         */
+        abstract int polinomios();
+
+        /**
+         * @return The first q share bytes
+         */
+        abstract byte[] extract(int q) throws IOException;
+
+        /**
+         * @return Share byte j; only the bytes that hold it are read
+         */
+        abstract byte extractAt(int j) throws IOException;
+    }
+
+    private class SombraBmp extends Sombra {
+        private final BmpImage imagen;
+        private final ByteBuffer pixels;
+
+        SombraBmp(BmpImage imagen) {
+            super(imagen.getHeader());
+            this.imagen = imagen;
+            this.pixels = imagen.getPixelBuffer();
+        }
+
+        @Override
+        void load() {
+            imagen.load();
+        }
+
+        @Override
+        int polinomios() {
+            return (k != 8) ? imagen.getIntFromHeader(34) : imagen.getPixelDataLength() / k;
+        }
+
+        @Override
+        byte[] extract(int q) {
+            return LsbSteganography.extract(pixels, q);
+        }
+
+        @Override
+        byte extractAt(int j) {
+            return LsbSteganography.extractAt(pixels, j);
+        }
+    }
+
+    private static class SombraContenedor extends Sombra {
+        private final ShareContainer contenedor;
+
+        SombraContenedor(ShareContainer contenedor) {
+            super(contenedor.getHeader());
+            this.contenedor = contenedor;
+        }
+
+        @Override
+        void load() {
+            contenedor.load();
+        }
+
+        @Override
+        int polinomios() {
+            return contenedor.getPolynomials();
+        }
+
+        @Override
+        byte[] extract(int q) throws IOException {
+            byte[] shares = contenedor.readShares();
+            if (shares.length < q) {
+                throw new IllegalArgumentException("El contenedor de la sombra " + contenedor.getShadowNumber() + " tiene " +
+                        shares.length + " bytes y se esperaban " + q);
+            }
+            return shares.length == q ? shares : Arrays.copyOf(shares, q);
+        }
+
+        @Override
+        byte extractAt(int j) throws IOException {
+            return contenedor.shareAt(j);
+        }
+    }
+
+    private int[] idsDe(List<Sombra> sombras) {
+        int[] sombraIds = new int[sombras.size()];
+        for (int i = 0; i < sombraIds.length; i++) {
+            sombraIds[i] = new BmpImage(sombras.get(i).header, null).getReservedBytes(8);
+        }
+        return sombraIds;
+    }
+
+    /**
+     * Returns the number of polynomials hidden in the shadows.
+     */
+    private int cantidadPolinomios(Sombra auxShadow) {
+        int q = auxShadow.polinomios();
+        if (q <= 0) {
+            throw new IllegalArgumentException("Valor de q inválido: " + q);
+        }
+        return q;
+    }
+
+    /**
+     * Recovers the coefficients of the polynomials in [desde, hasta) as A^-1 * y.
+     * The y buffer is allocated once per call, so the loop itself does not allocate.
+     */
+    private void resolverBloques(int[] inversa, byte[][] extracted, int desde, int hasta, byte[] recoveredPermuted) {
+        int[] y = new int[k];
+        for (int j = desde; j < hasta; j++) {
+            for (int i = 0; i < k; i++) {
+                y[i] = Byte.toUnsignedInt(extracted[i][j]);
+            }
+            for (int i = 0; i < k; i++) {
+                recoveredPermuted[j * k + i] = (byte) Gf257.dot(inversa, i * k, y, k);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #resolverBloques}, over GF(2^8): sums are XORs and products table lookups.
+     */
+    private void resolverBloquesGf256(int[] inversa, byte[][] extracted, int desde, int hasta, byte[] recoveredPermuted) {
+        int[] logY = new int[k];
+        for (int j = desde; j < hasta; j++) {
+            for (int i = 0; i < k; i++) {
+                logY[i] = Gf256.LOG[extracted[i][j] & 0xFF];
+            }
+            for (int i = 0; i < k; i++) {
+                int acc = 0;
+                for (int r = 0; r < k; r++) {
+                    acc ^= Gf256.EXP[Gf256.LOG[inversa[i * k + r]] + logY[r]];
+                }
+                recoveredPermuted[j * k + i] = (byte) acc;
+            }
         }
-        return x;
     }
 
     /**
-     * Computes the modular inverse of a modulo mod.
+     * Inverts the Vandermonde matrix of the shadow ids over the field of the shadows.
+     * The ids are the same for every polynomial, so the inverse is computed once
+     * and each block is then recovered with a single matrix-vector product.
      */
-    private int modInverse(int a, int mod) {
-        a = ((a % mod) + mod) % mod;
-        int m0 = mod, t, q;
-        int x0 = 0, x1 = 1;
-        if (mod == 1) return 0;
-        while (a > 1) {
-            q = a / mod;
-            t = mod;
-            mod = a % mod;
-            a = t;
-            t = x0;
-            x0 = x1 - q * x0;
-            x1 = t;
+    private int[] invertir(int[] ids) {
+        if (metadata.getField() == PolynomialEvaluator.FIELD_GF256) {
+            return Gf256.invertVandermonde(ids);
         }
-        return x1 < 0 ? x1 + m0 : x1;
+        return Gf257.invertVandermonde(ids);
     }
 }
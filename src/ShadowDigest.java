@@ -0,0 +1,75 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Integrity digest of the permuted secret, as it is recovered: after the coefficients
+ * lowered to avoid 256. The digest is the XOR of a 64-bit hash of every k-byte block and
+ * its index, so it is computed in a single pass that can be split across threads, and a
+ * changed block can be replaced without hashing the rest of the secret again.
+ * It detects corrupted or mixed-up shadows; it is not a cryptographic MAC.
+ */
+public final class ShadowDigest {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private ShadowDigest() {
+    }
+
+    /**
+     * Returns a new random sharing session id (never 0, which means "no session").
+     * @return The session id
+     */
+    public static long newSessionId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * Computes the digest of the whole permuted secret.
+     * @param permuted The permuted secret, q blocks of k bytes
+     * @param k The block size
+     * @param threads The number of worker threads
+     * @return The digest
+     * @throws Exception If a worker fails
+     */
+    public static long compute(byte[] permuted, int k, int threads) throws Exception {
+        AtomicLong digest = new AtomicLong();
+        try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+            executor.forEachRange(permuted.length / k, (desde, hasta) -> {
+                long parcial = 0;
+                for (int j = desde; j < hasta; j++) {
+                    parcial ^= blockHash(j, permuted, j * k, k);
+                }
+                long p = parcial;
+                digest.accumulateAndGet(p, (a, b) -> a ^ b);
+            });
+        }
+        return digest.get();
+    }
+
+    /**
+     * Hashes one block together with its index.
+     * @param block The index of the block in the secret
+     * @param data The array holding the block
+     * @param offset The first byte of the block
+     * @param k The block size (at most 16)
+     * @return The hash of the block, to be XORed into the digest
+     */
+    public static long blockHash(long block, byte[] data, int offset, int k) {
+        long bajo = 0;
+        long alto = 0;
+        for (int i = 0; i < k; i++) {
+            long b = data[offset + i] & 0xFFL;
+            if (i < 8) {
+                bajo |= b << (8 * i);
+            } else {
+                alto |= b << (8 * (i - 8));
+            }
+        }
+        long h = PermutationTable.mix64((block + 1) * GOLDEN_GAMMA);
+        h = PermutationTable.mix64(h ^ bajo);
+        return PermutationTable.mix64(h ^ alto ^ ((long) k << 56));
+    }
+}
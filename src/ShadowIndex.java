@@ -0,0 +1,256 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Header-only index of the shadows of a directory, built once per recovery. Of a BMP shadow only
+ * the 54-byte BMP header (seed, shadow number, q, dimensions, pixel data offset) and the metadata
+ * block that ends at the pixel data offset are read, skipping the palette and the pixels; of a
+ * {@link ShareContainer}, its fixed fields and header. The shadows are grouped by seed, q,
+ * permutation version, session id and digest, the largest group is taken as the distribution and
+ * the other files are reported as rejected. {@link #select(int)} then picks the shadows to read,
+ * deterministically: one file per shadow number, the ones that take the fewest bytes to extract first.
+ */
+public class ShadowIndex {
+    private static final int BMP_HEADER = 54;
+
+    private final String dir;
+    private final List<Entry> entradas;
+    private final List<Entry> validas = new ArrayList<>();
+    private final List<String> rechazadas = new ArrayList<>();
+    private ShadowMetadata metadata;
+
+    /**
+     * The header fields of one shadow file.
+     */
+    public static final class Entry {
+        private final File file;
+        private final BmpImage info;
+        private final ShadowMetadata metadata;
+        private final long costo;
+
+        /**
+         * @param resumen The 54-byte BMP header followed by the metadata block, or the whole header of a container
+         */
+        private Entry(File file, byte[] resumen, long costo) {
+            this.file = file;
+            this.info = new BmpImage(resumen, null);
+            this.metadata = ShadowMetadata.read(resumen);
+            this.costo = costo;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isContainer() {
+            return ShareContainer.isContainer(file.getName());
+        }
+
+        public int getSeed() {
+            return info.getReservedBytes(6) & 0xFFFF;
+        }
+
+        public int getShadowNumber() {
+            return info.getReservedBytes(8) & 0xFFFF;
+        }
+
+        /**
+         * @return q as stored in the header (3 bytes)
+         */
+        public int getPolynomials() {
+            return info.getIntFromHeader(34) & 0xFFFFFF;
+        }
+
+        public int getWidth() {
+            return info.getWidth();
+        }
+
+        public int getHeight() {
+            return info.getHeight();
+        }
+
+        public ShadowMetadata getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * @return The bytes a full recovery reads from this file
+         */
+        public long getCost() {
+            return costo;
+        }
+
+        /**
+         * The key of the distribution the shadow belongs to.
+         */
+        private String clave() {
+            return getSeed() + "/" + getPolynomials() + "/" + metadata.getPermutationVersion() + "/" +
+                    metadata.getSessionId() + "/" + metadata.getDigest();
+        }
+    }
+
+    private ShadowIndex(String dir, List<Entry> entradas) {
+        this.dir = dir;
+        this.entradas = entradas;
+        agrupar();
+    }
+
+    /**
+     * Reads the headers of every shadow (BMP or container) of a directory.
+     * @param dir The directory
+     * @return The index, empty if the directory has no shadows
+     * @throws IOException If a shadow header cannot be read
+     */
+    public static ShadowIndex scan(String dir) throws IOException {
+        File[] archivos = new File(dir).listFiles((d, name) -> name.endsWith(".bmp") || ShareContainer.isContainer(name));
+        List<Entry> entradas = new ArrayList<>();
+        if (archivos != null) {
+            Arrays.sort(archivos);
+            for (File archivo : archivos) {
+                entradas.add(leer(archivo));
+            }
+        }
+        return new ShadowIndex(dir, entradas);
+    }
+
+    private static Entry leer(File archivo) throws IOException {
+        if (ShareContainer.isContainer(archivo.getName())) {
+            return new Entry(archivo, ShareContainer.readHeader(archivo.getAbsolutePath()), archivo.length());
+        }
+        try (FileChannel channel = FileChannel.open(archivo.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BMP_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            leerEn(channel, header, 0, archivo);
+            int offset = header.getInt(10);
+            if (offset < BMP_HEADER || offset > channel.size()) {
+                throw new IOException("Offset de datos inválido en el header BMP: " + offset + " (" + archivo.getName() + ")");
+            }
+            int bits = header.getShort(28);
+            if (bits != 8 && bits != 24 && bits != 32) {
+                throw new IOException("Solo se admiten imágenes BMP de 8, 24 o 32 bits por píxel (" + archivo.getName() + " tiene " + bits + ")");
+            }
+            // The metadata block ends at the pixel data offset; the palette before it is skipped
+            int cola = Math.min(ShadowMetadata.MAX_BLOCK_LENGTH, offset - BMP_HEADER);
+            byte[] resumen = Arrays.copyOf(header.array(), BMP_HEADER + cola);
+            leerEn(channel, ByteBuffer.wrap(resumen, BMP_HEADER, cola), offset - cola, archivo);
+            // Payload byte j takes the LSBs of 8 carrier bytes, up to the whole pixel data
+            long pixels = channel.size() - offset;
+            long q = header.getInt(34) & 0xFFFFFF;
+            return new Entry(archivo, resumen, Math.min(pixels, 8 * q));
+        }
+    }
+
+    private static void leerEn(FileChannel channel, ByteBuffer buffer, long position, File archivo) throws IOException {
+        int inicio = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - inicio) < 0) {
+                throw new IOException("Archivo BMP truncado: " + archivo.getName());
+            }
+        }
+    }
+
+    /**
+     * Groups the shadows by distribution and keeps the largest group.
+     */
+    private void agrupar() {
+        Map<String, List<Entry>> grupos = new LinkedHashMap<>();
+        for (Entry e : entradas) {
+            grupos.computeIfAbsent(e.clave(), c -> new ArrayList<>()).add(e);
+        }
+        List<Entry> mayoria = null;
+        for (List<Entry> grupo : grupos.values()) {
+            if (mayoria == null || grupo.size() > mayoria.size()) {
+                mayoria = grupo;
+            }
+        }
+        for (List<Entry> grupo : grupos.values()) {
+            if (grupo == mayoria) {
+                validas.addAll(grupo);
+                metadata = grupo.get(0).getMetadata();
+            } else {
+                for (Entry e : grupo) {
+                    rechazadas.add(e.getFile().getName());
+                }
+            }
+        }
+        Collections.sort(rechazadas);
+    }
+
+    public String getDir() {
+        return dir;
+    }
+
+    /**
+     * @return The number of shadow files found
+     */
+    public int size() {
+        return entradas.size();
+    }
+
+    /**
+     * @return The shadows of the distribution (the largest group), in name order
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(validas);
+    }
+
+    /**
+     * @return The file names of the shadows that belong to another distribution, sorted
+     */
+    public List<String> getRejected() {
+        return Collections.unmodifiableList(rechazadas);
+    }
+
+    /**
+     * @return The metadata of the distribution, or null if there are no shadows
+     */
+    public ShadowMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return The permutation seed of the distribution
+     */
+    public int getSeed() {
+        return validas.get(0).getSeed();
+    }
+
+    /**
+     * Picks the shadows to read: for every shadow number the file that is cheapest to extract
+     * (a share container before a BMP), and of those the given number, cheapest first, with ties
+     * broken by shadow number. The choice only depends on the headers and file sizes, so
+     * recovering the same directory twice reads the same files.
+     * @param cantidad The number of shadows wanted; all of them if there are fewer
+     * @return The chosen shadows, sorted by cost and shadow number
+     */
+    public List<Entry> select(int cantidad) {
+        Comparator<Entry> porCosto = Comparator.comparingLong(Entry::getCost)
+                .thenComparingInt(Entry::getShadowNumber)
+                .thenComparing(e -> e.getFile().getName());
+        List<Entry> ordenadas = new ArrayList<>(validas);
+        ordenadas.sort(porCosto);
+        Map<Integer, Entry> porNumero = new LinkedHashMap<>();
+        for (Entry e : ordenadas) {
+            porNumero.putIfAbsent(e.getShadowNumber(), e);
+        }
+        List<Entry> elegidas = new ArrayList<>(porNumero.values());
+        return elegidas.subList(0, Math.min(cantidad, elegidas.size()));
+    }
+
+    /**
+     * @return The number of distinct shadow numbers in the distribution
+     */
+    public int distinctShadows() {
+        return select(Integer.MAX_VALUE).size();
+    }
+}
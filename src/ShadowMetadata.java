@@ -0,0 +1,222 @@
+/**
+ * Shadow metadata that does not fit in the reserved bytes 6-9 of the BMP header.
+ * It is stored in a block appended to the header, between the palette and the pixel data;
+ * the pixel data offset (bytes 10-13) and the file size (bytes 2-5) are moved past it, so
+ * the shadow is still a valid BMP. Shadows without the block are legacy shadows.
+ * <p>
+ * Block layout: "VSSS" magic, the fields, and the block length (2 bytes, little endian)
+ * as the last bytes of the header, so the block can be found from the end of the header.
+ * Fields: the permutation version (1 byte); in shadows with an integrity check, the
+ * sharing session id and the digest of the permuted secret (8 bytes each, little endian);
+ * and in shadows shared over another field than GF(257), the field id (1 byte).
+ * Readers use the block length to know which fields are present.
+ */
+public class ShadowMetadata {
+    private static final byte[] MAGIC = {'V', 'S', 'S', 'S'};
+    private static final int PERMUTATION_VERSION_POSITION = 4;
+    private static final int SESSION_ID_POSITION = 5;
+    private static final int DIGEST_POSITION = 13;
+    private static final int BLOCK_LENGTH = 7;
+    private static final int INTEGRITY_BLOCK_LENGTH = 23;
+    private static final int FIELD_POSITION = 21;
+    private static final int FIELD_BLOCK_LENGTH = 24;
+    private static final int MIN_HEADER = 54;
+
+    /** The length of the longest metadata block, which ends at the pixel data offset. */
+    public static final int MAX_BLOCK_LENGTH = FIELD_BLOCK_LENGTH;
+
+    private int permutationVersion = PermutationTable.VERSION_LEGACY;
+    private long sessionId;
+    private long digest;
+    private int field = PolynomialEvaluator.FIELD_GF257;
+
+    public int getPermutationVersion() {
+        return permutationVersion;
+    }
+
+    public void setPermutationVersion(int permutationVersion) {
+        PermutationTable.checkVersion(permutationVersion);
+        this.permutationVersion = permutationVersion;
+    }
+
+    /**
+     * @return The sharing session id, 0 if the shadow has no integrity check
+     */
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Sets the id shared by all the shadows of one distribution; 0 writes no integrity check.
+     * @param sessionId The session id
+     */
+    public void setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * @return The digest of the permuted secret (see {@link ShadowDigest})
+     */
+    public long getDigest() {
+        return digest;
+    }
+
+    public void setDigest(long digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * @return The field the secret was shared over, see {@link PolynomialEvaluator#FIELD_GF257}
+     */
+    public int getField() {
+        return field;
+    }
+
+    public void setField(int field) {
+        PolynomialEvaluator.checkField(field);
+        this.field = field;
+    }
+
+    /**
+     * Whether the shadow carries a session id and a digest of the secret.
+     * @return true if the recovered secret can be verified
+     */
+    public boolean hasIntegrity() {
+        return sessionId != 0;
+    }
+
+    /**
+     * Whether every field has its legacy value, in which case no block is needed.
+     * @return true if the shadow can be written in the legacy format
+     */
+    public boolean isLegacy() {
+        return permutationVersion == PermutationTable.VERSION_LEGACY && !hasIntegrity()
+                && field == PolynomialEvaluator.FIELD_GF257;
+    }
+
+    /**
+     * Whether two shadows can belong to the same distribution, as far as their metadata tells.
+     * @param other The metadata of the other shadow
+     * @return true if every field matches
+     */
+    public boolean matches(ShadowMetadata other) {
+        return permutationVersion == other.permutationVersion && sessionId == other.sessionId && digest == other.digest
+                && field == other.field;
+    }
+
+    /**
+     * Returns a copy of the header with this metadata block, replacing any existing block.
+     * Legacy metadata returns the header without a block.
+     * @param header The BMP header (up to the pixel data offset)
+     * @return The new header
+     */
+    public byte[] applyTo(byte[] header) {
+        byte[] base = strip(header);
+        if (isLegacy()) {
+            return base;
+        }
+        int length = field != PolynomialEvaluator.FIELD_GF257 ? FIELD_BLOCK_LENGTH
+                : hasIntegrity() ? INTEGRITY_BLOCK_LENGTH : BLOCK_LENGTH;
+        byte[] result = new byte[base.length + length];
+        System.arraycopy(base, 0, result, 0, base.length);
+        int start = base.length;
+        System.arraycopy(MAGIC, 0, result, start, MAGIC.length);
+        result[start + PERMUTATION_VERSION_POSITION] = (byte) permutationVersion;
+        if (length >= INTEGRITY_BLOCK_LENGTH) {
+            putLong(result, start + SESSION_ID_POSITION, sessionId);
+            putLong(result, start + DIGEST_POSITION, digest);
+        }
+        if (length >= FIELD_BLOCK_LENGTH) {
+            result[start + FIELD_POSITION] = (byte) field;
+        }
+        result[start + length - 2] = (byte) (length & 0xFF);
+        result[start + length - 1] = (byte) ((length >> 8) & 0xFF);
+        addToHeaderInt(result, 2, length);
+        addToHeaderInt(result, 10, length);
+        return result;
+    }
+
+    /**
+     * Reads the metadata of a shadow header. Headers without a block yield legacy metadata.
+     * @param header The BMP header (up to the pixel data offset)
+     * @return The metadata
+     */
+    public static ShadowMetadata read(byte[] header) {
+        ShadowMetadata metadata = new ShadowMetadata();
+        int start = blockStart(header);
+        if (start >= 0) {
+            metadata.setPermutationVersion(header[start + PERMUTATION_VERSION_POSITION] & 0xFF);
+            if (header.length - start >= INTEGRITY_BLOCK_LENGTH) {
+                metadata.sessionId = getLong(header, start + SESSION_ID_POSITION);
+                metadata.digest = getLong(header, start + DIGEST_POSITION);
+            }
+            if (header.length - start >= FIELD_BLOCK_LENGTH) {
+                metadata.setField(header[start + FIELD_POSITION] & 0xFF);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the header without its metadata block (the same array if there is none),
+     * for instance to write the recovered image as a plain BMP.
+     * @param header The BMP header (up to the pixel data offset)
+     * @return The header without the block
+     */
+    public static byte[] strip(byte[] header) {
+        int start = blockStart(header);
+        if (start < 0) {
+            return header;
+        }
+        int length = header.length - start;
+        byte[] result = new byte[start];
+        System.arraycopy(header, 0, result, 0, start);
+        addToHeaderInt(result, 2, -length);
+        addToHeaderInt(result, 10, -length);
+        return result;
+    }
+
+    /**
+     * Finds the start of the metadata block, or -1 if the header has none.
+     */
+    private static int blockStart(byte[] header) {
+        if (header.length < MIN_HEADER + BLOCK_LENGTH) {
+            return -1;
+        }
+        int length = (header[header.length - 2] & 0xFF) | ((header[header.length - 1] & 0xFF) << 8);
+        int start = header.length - length;
+        if (length < BLOCK_LENGTH || start < MIN_HEADER) {
+            return -1;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[start + i] != MAGIC[i]) {
+                return -1;
+            }
+        }
+        return start;
+    }
+
+    private static void putLong(byte[] header, int position, long value) {
+        for (int i = 0; i < 8; i++) {
+            header[position + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static long getLong(byte[] header, int position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value |= (header[position + i] & 0xFFL) << (8 * i);
+        }
+        return value;
+    }
+
+    private static void addToHeaderInt(byte[] header, int position, int delta) {
+        int value = ((header[position + 3] & 0xFF) << 24) | ((header[position + 2] & 0xFF) << 16) |
+                ((header[position + 1] & 0xFF) << 8) | (header[position] & 0xFF);
+        value += delta;
+        header[position] = (byte) (value & 0xFF);
+        header[position + 1] = (byte) ((value >> 8) & 0xFF);
+        header[position + 2] = (byte) ((value >> 16) & 0xFF);
+        header[position + 3] = (byte) ((value >> 24) & 0xFF);
+    }
+}
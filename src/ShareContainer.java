@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A shadow without a carrier: the header fields and the q share bytes in a compact file
+ * (sombraN.vss), for archival and for moving shares between services where steganography is
+ * not needed. It takes q bytes plus the header instead of a carrier-sized BMP, and recovery
+ * reads it alongside BMP shadows.
+ * <p>
+ * Layout, little endian: "VSSC" magic, format version (1 byte), flags (1 byte, bit 0: compressed),
+ * k (1 byte), field (1 byte), seed (2 bytes), shadow number (2 bytes), q (4 bytes), length of the
+ * BMP header (4 bytes), block size (4 bytes), CRC32C of the payload (4 bytes) and CRC32C of all
+ * the previous bytes and the BMP header (4 bytes); then the BMP header a shadow of the same
+ * distribution would have (seed, shadow number, q and metadata block included), so recovery
+ * validates both kinds of shadows the same way and writes the secret with it; then the payload.
+ * <p>
+ * A compressed payload is deflated in independent blocks of the block size, after the stored
+ * length of every block (4 bytes each); blocks that do not shrink are stored as they are, so the
+ * only overhead is the length table. The shares of a permuted secret are close to random and
+ * rarely shrink, so compression is optional. Blocks are inflated one at a time, so a partial
+ * recovery reads only the blocks it needs.
+ */
+public class ShareContainer {
+    public static final String EXTENSION = ".vss";
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    private static final byte[] MAGIC = {'V', 'S', 'S', 'C'};
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int FIXED_LENGTH = 32;
+    private static final int PAYLOAD_CRC_POSITION = 24;
+    private static final int HEADER_CRC_POSITION = 28;
+    private static final int MIN_HEADER = 54;
+
+    private final String path;
+    private final ByteBuffer fijo;
+    private final byte[] header;
+    private final MappedByteBuffer archivo;
+    // Payload as stored: the share bytes, or the length table and the deflated blocks
+    private final ByteBuffer payload;
+    private int[] inicioBloques;
+    private int bloqueActual = -1;
+    private byte[] bloque;
+
+    private ShareContainer(String path, ByteBuffer fijo, byte[] header, MappedByteBuffer archivo) throws IOException {
+        this.path = path;
+        this.fijo = fijo;
+        this.header = header;
+        this.archivo = archivo;
+        this.payload = archivo.duplicate().position(FIXED_LENGTH + header.length).slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (isCompressed()) {
+            int bloques = cantidadBloques(getPolynomials(), getBlockSize());
+            if ((long) bloques * 4 > payload.limit()) {
+                throw new IOException("Contenedor de sombra truncado: " + path);
+            }
+            inicioBloques = new int[bloques + 1];
+            inicioBloques[0] = bloques * 4;
+            for (int b = 0; b < bloques; b++) {
+                int guardado = payload.getInt(b * 4);
+                if (guardado < 0 || guardado > getBlockSize()) {
+                    throw new IOException("El contenedor de sombra " + path + " está dañado: largo inválido del bloque " + b);
+                }
+                inicioBloques[b + 1] = inicioBloques[b] + guardado;
+            }
+            if (inicioBloques[bloques] != payload.limit()) {
+                throw new IOException("Contenedor de sombra truncado: " + path);
+            }
+        } else if (payload.limit() != getPolynomials()) {
+            throw new IOException("Contenedor de sombra truncado: " + path);
+        }
+    }
+
+    /**
+     * Whether a file name is the one of a share container.
+     * @param name The file name
+     * @return true if it has the container extension
+     */
+    public static boolean isContainer(String name) {
+        return name.endsWith(EXTENSION);
+    }
+
+    /**
+     * Writes a share container.
+     * @param outputPath The path of the file
+     * @param header The BMP header of the shadow, with the seed, shadow number, q and metadata already set
+     * @param k The threshold of the distribution
+     * @param shares The q share bytes of the shadow
+     * @param compress Whether to deflate the payload in blocks
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(String outputPath, byte[] header, int k, byte[] shares, boolean compress) throws IOException {
+        BmpImage info = new BmpImage(header, null);
+        ByteBuffer payload = compress ? comprimir(shares, DEFAULT_BLOCK_SIZE) : ByteBuffer.wrap(shares);
+        ByteBuffer fijo = ByteBuffer.allocate(FIXED_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        fijo.put(MAGIC)
+                .put((byte) FORMAT_VERSION)
+                .put((byte) (compress ? FLAG_COMPRESSED : 0))
+                .put((byte) k)
+                .put((byte) ShadowMetadata.read(header).getField())
+                .putShort(info.getReservedBytes(6))
+                .putShort(info.getReservedBytes(8))
+                .putInt(shares.length)
+                .putInt(header.length)
+                .putInt(compress ? DEFAULT_BLOCK_SIZE : 0);
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        fijo.putInt(PAYLOAD_CRC_POSITION, (int) crc.getValue());
+        fijo.putInt(HEADER_CRC_POSITION, crcDelHeader(fijo, header));
+        fijo.clear();
+        ByteBuffer[] buffers = {fijo, ByteBuffer.wrap(header), payload};
+        try (FileChannel channel = FileChannel.open(Paths.get(outputPath),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffers[2].hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+    }
+
+    /**
+     * Reads only the fixed fields and the BMP header of a container, checking its header CRC.
+     * @param path The path of the container
+     * @return The BMP header of the shadow
+     * @throws IOException If the file cannot be read or is not a valid container
+     */
+    public static byte[] readHeader(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer fijo = leerFijo(channel, path);
+            long largoHeader = fijo.getInt(16) & 0xFFFFFFFFL;
+            if (FIXED_LENGTH + largoHeader > channel.size()) {
+                throw new IOException("Contenedor de sombra truncado: " + path);
+            }
+            byte[] header = new byte[(int) largoHeader];
+            ByteBuffer destino = ByteBuffer.wrap(header);
+            while (destino.hasRemaining()) {
+                if (channel.read(destino, FIXED_LENGTH + destino.position()) < 0) {
+                    throw new IOException("Contenedor de sombra truncado: " + path);
+                }
+            }
+            validarHeader(fijo, header, path);
+            return header;
+        }
+    }
+
+    /**
+     * Opens a container through a read-only memory mapping. Only the fixed fields and the BMP
+     * header are read and checked; the payload is read by {@link #readShares()} or {@link #shareAt(int)}.
+     * @param path The path of the container
+     * @return The opened container
+     * @throws IOException If the file cannot be read or is not a valid container
+     */
+    public static ShareContainer open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer fijo = leerFijo(channel, path);
+            long largoHeader = fijo.getInt(16) & 0xFFFFFFFFL;
+            if (FIXED_LENGTH + largoHeader > channel.size()) {
+                throw new IOException("Contenedor de sombra truncado: " + path);
+            }
+            MappedByteBuffer archivo = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] header = new byte[(int) largoHeader];
+            archivo.duplicate().position(FIXED_LENGTH).get(header);
+            validarHeader(fijo, header, path);
+            return new ShareContainer(path, fijo, header, archivo);
+        }
+    }
+
+    public byte[] getHeader() {
+        return header;
+    }
+
+    public int getK() {
+        return fijo.get(6) & 0xFF;
+    }
+
+    public int getField() {
+        return fijo.get(7) & 0xFF;
+    }
+
+    public int getSeed() {
+        return fijo.getShort(8) & 0xFFFF;
+    }
+
+    public int getShadowNumber() {
+        return fijo.getShort(10) & 0xFFFF;
+    }
+
+    /**
+     * @return q, the number of share bytes
+     */
+    public int getPolynomials() {
+        return fijo.getInt(12);
+    }
+
+    public boolean isCompressed() {
+        return (fijo.get(5) & FLAG_COMPRESSED) != 0;
+    }
+
+    private int getBlockSize() {
+        return fijo.getInt(20);
+    }
+
+    /**
+     * Reads the pages of the container into memory, like {@link BmpImage#load()}.
+     */
+    public void load() {
+        archivo.load();
+    }
+
+    /**
+     * Reads all the share bytes, checking the payload CRC.
+     * @return The q share bytes
+     * @throws IOException If the payload does not match its CRC or cannot be inflated
+     */
+    public byte[] readShares() throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != fijo.getInt(PAYLOAD_CRC_POSITION)) {
+            throw new IOException("El contenedor de sombra " + path + " está dañado: el CRC de las sombras no coincide.");
+        }
+        byte[] shares = new byte[getPolynomials()];
+        if (!isCompressed()) {
+            payload.duplicate().get(shares);
+            return shares;
+        }
+        int tamanio = getBlockSize();
+        for (int b = 0; b < inicioBloques.length - 1; b++) {
+            int desde = b * tamanio;
+            inflar(b, shares, desde, Math.min(tamanio, shares.length - desde));
+        }
+        return shares;
+    }
+
+    /**
+     * Reads share byte j, inflating only its block in compressed containers. The payload CRC
+     * is not checked, since that would read the whole payload. Not thread-safe.
+     * @param j The index of the share byte (the polynomial block)
+     * @return The share byte
+     * @throws IOException If the block cannot be inflated
+     */
+    public byte shareAt(int j) throws IOException {
+        if (!isCompressed()) {
+            return payload.get(j);
+        }
+        int tamanio = getBlockSize();
+        int b = j / tamanio;
+        if (b != bloqueActual) {
+            if (bloque == null) {
+                bloque = new byte[tamanio];
+            }
+            inflar(b, bloque, 0, Math.min(tamanio, getPolynomials() - b * tamanio));
+            bloqueActual = b;
+        }
+        return bloque[j - b * tamanio];
+    }
+
+    /**
+     * Writes block b, of the given length, to out[offset...].
+     */
+    private void inflar(int b, byte[] out, int offset, int length) throws IOException {
+        int guardado = inicioBloques[b + 1] - inicioBloques[b];
+        ByteBuffer datos = payload.duplicate().position(inicioBloques[b]).limit(inicioBloques[b + 1]);
+        // A block stored with its own length was not compressed
+        if (guardado == length) {
+            datos.get(out, offset, length);
+            return;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(datos);
+            int total = 0;
+            while (total < length && !inflater.finished()) {
+                int leidos = inflater.inflate(out, offset + total, length - total);
+                if (leidos == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                total += leidos;
+            }
+            if (total != length) {
+                throw new IOException("El contenedor de sombra " + path + " está dañado: el bloque " + b + " no se puede descomprimir.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("El contenedor de sombra " + path + " está dañado: el bloque " + b + " no se puede descomprimir.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Deflates the shares in blocks, after the table of stored lengths.
+     */
+    private static ByteBuffer comprimir(byte[] shares, int tamanio) {
+        int bloques = cantidadBloques(shares.length, tamanio);
+        // Blocks that do not shrink are stored as they are, so no block takes more than its length
+        ByteBuffer out = ByteBuffer.allocate(bloques * 4 + shares.length).order(ByteOrder.LITTLE_ENDIAN);
+        out.position(bloques * 4);
+        byte[] comprimido = new byte[tamanio];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int b = 0; b < bloques; b++) {
+                int desde = b * tamanio;
+                int length = Math.min(tamanio, shares.length - desde);
+                deflater.reset();
+                deflater.setInput(shares, desde, length);
+                deflater.finish();
+                int total = 0;
+                while (!deflater.finished() && total < length) {
+                    total += deflater.deflate(comprimido, total, comprimido.length - total);
+                }
+                if (deflater.finished() && total < length) {
+                    out.put(comprimido, 0, total);
+                } else {
+                    total = length;
+                    out.put(shares, desde, length);
+                }
+                out.putInt(b * 4, total);
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.flip();
+    }
+
+    private static int cantidadBloques(int q, int tamanio) {
+        if (tamanio <= 0) {
+            return 0;
+        }
+        return (int) (((long) q + tamanio - 1) / tamanio);
+    }
+
+    private static ByteBuffer leerFijo(FileChannel channel, String path) throws IOException {
+        ByteBuffer fijo = ByteBuffer.allocate(FIXED_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        while (fijo.hasRemaining()) {
+            if (channel.read(fijo, fijo.position()) < 0) {
+                throw new IOException("Contenedor de sombra truncado: " + path);
+            }
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (fijo.get(i) != MAGIC[i]) {
+                throw new IOException("El archivo no es un contenedor de sombra: " + path);
+            }
+        }
+        if (fijo.get(4) != FORMAT_VERSION) {
+            throw new IOException("Versión de contenedor de sombra no soportada (" + fijo.get(4) + "): " + path);
+        }
+        return fijo;
+    }
+
+    /**
+     * Checks the header CRC and that the fixed fields match the ones in the BMP header.
+     */
+    private static void validarHeader(ByteBuffer fijo, byte[] header, String path) throws IOException {
+        if (header.length < MIN_HEADER) {
+            throw new IOException("Header BMP inválido en el contenedor de sombra: " + path);
+        }
+        if (crcDelHeader(fijo, header) != fijo.getInt(HEADER_CRC_POSITION)) {
+            throw new IOException("El contenedor de sombra " + path + " está dañado: el CRC del header no coincide.");
+        }
+        BmpImage info = new BmpImage(header, null);
+        boolean coincide = info.getReservedBytes(6) == fijo.getShort(8)
+                && info.getReservedBytes(8) == fijo.getShort(10)
+                && (info.getIntFromHeader(34) & 0xFFFFFF) == (fijo.getInt(12) & 0xFFFFFF)
+                && ShadowMetadata.read(header).getField() == (fijo.get(7) & 0xFF);
+        if (!coincide) {
+            throw new IOException("Los campos del contenedor de sombra no coinciden con su header BMP: " + path);
+        }
+    }
+
+    private static int crcDelHeader(ByteBuffer fijo, byte[] header) {
+        CRC32C crc = new CRC32C();
+        crc.update(fijo.array(), 0, HEADER_CRC_POSITION);
+        crc.update(header);
+        return (int) crc.getValue();
+    }
+}
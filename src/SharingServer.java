@@ -0,0 +1,375 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resident distribute/recover server on localhost, so that repeated jobs reuse a warm JVM
+ * and the cached carriers instead of starting a new process per secret.
+ * <p>
+ * Endpoints (parameters in the query string, same meaning as the CLI options):
+ * <ul>
+ *   <li>POST /distribute?secret=&amp;k=&amp;n=&amp;out=[&amp;dir=&amp;perm=&amp;field=&amp;threads=]</li>
+ *   <li>POST /recover?secret=&amp;k=&amp;n=[&amp;dir=&amp;threads=&amp;robust=true]</li>
+ *   <li>GET /stats: jobs, rejections, carrier cache counters and latency histograms</li>
+ * </ul>
+ * At most {@code workers} jobs run at the same time and at most {@code queue} more wait for a
+ * worker; any other job is rejected right away with 503 so that clients back off.
+ * <p>
+ * Every request must carry the token of the process in the {@value #TOKEN_HEADER} header. A web
+ * page cannot add that header without a CORS preflight, which the server does not answer, and
+ * requests with an {@code Origin} header or a form content type are rejected as well, so a
+ * browser cannot be used to send jobs. Every path (secret, output, carrier and shadow
+ * directories) is resolved against the root directory given to the server and must stay inside it.
+ */
+public class SharingServer {
+    public static final int DEFAULT_QUEUE = 16;
+    public static final String TOKEN_HEADER = "X-VisualSSS-Token";
+    // Content types a browser sends without a CORS preflight
+    private static final String[] TIPOS_SIMPLES = {"application/x-www-form-urlencoded", "multipart/form-data", "text/plain"};
+
+    private final int port;
+    private final int workers;
+    private final int queue;
+    private final CarrierCache carrierCache;
+    private final Path raiz;
+    private final String token = nuevoToken();
+    private final Semaphore admitidos;
+    private final Semaphore enEjecucion;
+    private final LatencyHistogram latenciaDistribucion = new LatencyHistogram();
+    private final LatencyHistogram latenciaRecuperacion = new LatencyHistogram();
+    private final LongAdder rechazados = new LongAdder();
+    private final LongAdder fallidos = new LongAdder();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Constructs a SharingServer.
+     * @param port The localhost port to listen on (0 picks a free port)
+     * @param workers The number of jobs that run at the same time
+     * @param queue The number of jobs that may wait for a worker
+     * @param carrierCache The carrier cache shared by every distribution
+     * @param raiz The directory the secret and output paths of the jobs must be in
+     * @throws IOException If the root directory does not exist
+     */
+    public SharingServer(int port, int workers, int queue, CarrierCache carrierCache, File raiz) throws IOException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("La cantidad de workers debe ser al menos 1.");
+        }
+        if (queue < 0) {
+            throw new IllegalArgumentException("El tamaño de la cola no puede ser negativo.");
+        }
+        if (!raiz.isDirectory()) {
+            throw new IllegalArgumentException("El directorio raíz no existe: " + raiz);
+        }
+        this.port = port;
+        this.raiz = raiz.getCanonicalFile().toPath();
+        this.workers = workers;
+        this.queue = queue;
+        this.carrierCache = carrierCache;
+        this.admitidos = new Semaphore(workers + queue);
+        this.enEjecucion = new Semaphore(workers, true);
+    }
+
+    /**
+     * Starts listening on the loopback interface.
+     * @throws IOException If the port cannot be bound
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), workers + queue);
+        executor = crearExecutor(workers + queue + 1);
+        server.setExecutor(executor);
+        server.createContext("/distribute", exchange -> atender(exchange, true));
+        server.createContext("/recover", exchange -> atender(exchange, false));
+        server.createContext("/stats", exchange -> {
+            if (autorizar(exchange)) {
+                responder(exchange, 200, statsJson());
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Stops accepting jobs and waits up to the given time for running exchanges.
+     * @param seconds The maximum time to wait
+     */
+    public void stop(int seconds) {
+        server.stop(seconds);
+        executor.shutdown();
+    }
+
+    /**
+     * @return The token clients must send in the {@value #TOKEN_HEADER} header
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return The port the server is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Uses one virtual thread per exchange when the runtime has them (Java 21+); otherwise a
+     * fixed pool with one thread per admitted job plus one to answer rejections.
+     */
+    private static ExecutorService crearExecutor(int hilos) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(hilos);
+        }
+    }
+
+    private static String nuevoToken() {
+        byte[] bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Rejects requests from browsers and requests without the token; answers them and returns false.
+     */
+    private boolean autorizar(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            responder(exchange, 403, error("No se aceptan pedidos de navegadores"));
+            return false;
+        }
+        String tipo = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (tipo != null) {
+            String base = tipo.split(";")[0].trim().toLowerCase();
+            for (String simple : TIPOS_SIMPLES) {
+                if (base.equals(simple)) {
+                    responder(exchange, 415, error("Los parámetros van en la query string, no en un formulario"));
+                    return false;
+                }
+            }
+        }
+        String recibido = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        if (recibido == null || !MessageDigest.isEqual(recibido.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            responder(exchange, 401, error("Falta el header " + TOKEN_HEADER + " o el token no es válido"));
+            return false;
+        }
+        return true;
+    }
+
+    private void atender(HttpExchange exchange, boolean distribuir) throws IOException {
+        if (!autorizar(exchange)) {
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            responder(exchange, 405, error("Use POST"));
+            return;
+        }
+        if (!admitidos.tryAcquire()) {
+            rechazados.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            responder(exchange, 503, error("Servidor ocupado, reintente más tarde"));
+            return;
+        }
+        try {
+            Map<String, String> params = leerParametros(exchange);
+            enEjecucion.acquire();
+            long inicio = System.nanoTime();
+            try {
+                String respuesta = distribuir ? distribuir(params) : recuperar(params);
+                responder(exchange, 200, respuesta);
+            } finally {
+                long nanos = System.nanoTime() - inicio;
+                (distribuir ? latenciaDistribucion : latenciaRecuperacion).record(nanos);
+                enEjecucion.release();
+            }
+        } catch (IllegalArgumentException e) {
+            fallidos.increment();
+            responder(exchange, 400, error(e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responder(exchange, 503, error("Servidor detenido"));
+        } catch (Exception e) {
+            fallidos.increment();
+            responder(exchange, 500, error(String.valueOf(e.getMessage())));
+        } finally {
+            admitidos.release();
+        }
+    }
+
+    private String distribuir(Map<String, String> params) throws Exception {
+        String secret = dentroDeRaiz(requerido(params, "secret"), "secret");
+        int k = entero(params, "k", -1);
+        int n = entero(params, "n", -1);
+        String out = dentroDeRaiz(requerido(params, "out"), "out");
+        String dir = dentroDeRaiz(params.getOrDefault("dir", "."), "dir");
+        int threads = entero(params, "threads", 1);
+        int version = PermutationTable.VERSION_COUNTER;
+        if (params.containsKey("perm")) {
+            version = "legacy".equals(params.get("perm")) ? PermutationTable.VERSION_LEGACY
+                    : "counter".equals(params.get("perm")) ? PermutationTable.VERSION_COUNTER : -1;
+        }
+        PermutationTable.checkVersion(version);
+        int field = PolynomialEvaluator.FIELD_GF257;
+        if (params.containsKey("field")) {
+            field = "gf257".equals(params.get("field")) ? PolynomialEvaluator.FIELD_GF257
+                    : "gf256".equals(params.get("field")) ? PolynomialEvaluator.FIELD_GF256 : -1;
+        }
+        PolynomialEvaluator.checkField(field);
+        if (!new File(secret).isFile()) {
+            throw new IllegalArgumentException("El archivo secreto no existe: " + secret);
+        }
+        PhaseStats stats = new PhaseStats("distribute");
+        short seed = BatchDistributor.distribuirSecreto(secret, new File(out), k, n,
+                dir, version, field, false, false, threads, carrierCache, stats);
+        return "{\"status\":\"ok\",\"out\":\"" + json(out) + "\",\"seed\":" + (seed & 0xFFFF) +
+                ",\"stats\":" + stats.toJson() + "}";
+    }
+
+    @SuppressWarnings("try")
+    private String recuperar(Map<String, String> params) throws Exception {
+        String secret = dentroDeRaiz(requerido(params, "secret"), "secret");
+        if (!secret.endsWith(".bmp")) {
+            throw new IllegalArgumentException("El archivo secreto debe tener extensión .bmp");
+        }
+        int k = entero(params, "k", -1);
+        int n = entero(params, "n", -1);
+        String dir = dentroDeRaiz(params.getOrDefault("dir", "."), "dir");
+        PhaseStats stats = new PhaseStats("recover");
+        ShadowIndex sombras;
+        try (PhaseStats.Timer t = stats.start("scanShadows")) {
+            sombras = ShadowIndex.scan(dir);
+        }
+        if (sombras.size() < n) {
+            throw new IllegalArgumentException("No hay suficientes sombras en el directorio: " + dir);
+        }
+        List<String> defectuosas = VisualSSS.recuperar(secret, k, n, sombras, entero(params, "threads", 1),
+                "true".equals(params.get("robust")), stats);
+        StringBuilder nombres = new StringBuilder();
+        for (String nombre : defectuosas) {
+            nombres.append(nombres.length() == 0 ? "" : ",").append('"').append(json(nombre)).append('"');
+        }
+        return "{\"status\":\"ok\",\"secret\":\"" + json(secret) + "\",\"faultyShadows\":[" + nombres +
+                "],\"stats\":" + stats.toJson() + "}";
+    }
+
+    private String statsJson() {
+        return "{\"workers\":" + workers + ",\"queue\":" + queue +
+                ",\"running\":" + (workers - enEjecucion.availablePermits()) +
+                ",\"rejected\":" + rechazados.sum() + ",\"failed\":" + fallidos.sum() +
+                ",\"carrierCache\":{\"hits\":" + carrierCache.getHits() + ",\"misses\":" + carrierCache.getMisses() +
+                ",\"evictions\":" + carrierCache.getEvictions() + ",\"bytesInUse\":" + carrierCache.getBytesInUse() + "}" +
+                ",\"distribute\":" + latenciaDistribucion.toJson() +
+                ",\"recover\":" + latenciaRecuperacion.toJson() + "}";
+    }
+
+    /**
+     * Reads the query string into a map.
+     */
+    private static Map<String, String> leerParametros(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        agregarParametros(exchange.getRequestURI().getRawQuery(), params);
+        return params;
+    }
+
+    private static void agregarParametros(String query, Map<String, String> params) throws IOException {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        for (String par : query.split("&")) {
+            int igual = par.indexOf('=');
+            String clave = igual < 0 ? par : par.substring(0, igual);
+            String valor = igual < 0 ? "" : par.substring(igual + 1);
+            params.put(URLDecoder.decode(clave.trim(), StandardCharsets.UTF_8.name()),
+                    URLDecoder.decode(valor.trim(), StandardCharsets.UTF_8.name()));
+        }
+    }
+
+    private static String requerido(Map<String, String> params, String nombre) {
+        String valor = params.get(nombre);
+        if (valor == null || valor.isEmpty()) {
+            throw new IllegalArgumentException("Falta el parámetro " + nombre);
+        }
+        return valor;
+    }
+
+    /**
+     * Resolves a path parameter against the root directory, rejecting paths outside of it
+     * (symbolic links included).
+     * @param ruta The value of the parameter
+     * @param nombre The name of the parameter, for the error message
+     * @return The canonical path
+     */
+    private String dentroDeRaiz(String ruta, String nombre) throws IOException {
+        File archivo = new File(ruta);
+        if (!archivo.isAbsolute()) {
+            archivo = raiz.resolve(archivo.getPath()).toFile();
+        }
+        Path canonico = archivo.getCanonicalFile().toPath();
+        if (!canonico.startsWith(raiz)) {
+            throw new IllegalArgumentException("El parámetro " + nombre + " debe estar dentro de " + raiz);
+        }
+        return canonico.toString();
+    }
+
+    private static int entero(Map<String, String> params, String nombre, int predeterminado) {
+        String valor = params.get(nombre);
+        if (valor == null) {
+            if (predeterminado < 0) {
+                throw new IllegalArgumentException("Falta el parámetro " + nombre);
+            }
+            return predeterminado;
+        }
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El parámetro " + nombre + " debe ser un número entero.");
+        }
+    }
+
+    private static String error(String mensaje) {
+        return "{\"status\":\"error\",\"message\":\"" + json(mensaje) + "\"}";
+    }
+
+    private static String json(String texto) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : texto.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void responder(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
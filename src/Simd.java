@@ -0,0 +1,105 @@
+/**
+ * Optional SIMD backend built on the JDK Vector API (jdk.incubator.vector). Its kernels live in
+ * src-simd/VectorKernels.java, which is only compiled and loaded when the incubator module is
+ * there ({@code java --add-modules jdk.incubator.vector}); otherwise, or with
+ * {@code -Dvisualsss.simd=false}, {@link #kernels()} returns null and every caller runs its
+ * scalar code. Kernels that return a count leave the rest of the work to the caller's scalar
+ * loop, so the results are the same with either backend. LSB extraction keeps the scalar
+ * multiply-gather of {@link LsbSteganography}: on JDK 17 the cross-lane packing a vector
+ * version needs is not intrinsified and measured slower than the scalar loop.
+ */
+public final class Simd {
+    private static final Kernels VECTOR = cargar();
+    private static volatile boolean enabled = VECTOR != null && !"false".equals(System.getProperty("visualsss.simd"));
+
+    private Simd() {
+    }
+
+    /**
+     * The vectorized kernels.
+     */
+    public interface Kernels {
+        /**
+         * @return A description of the backend, such as the vector shape in use
+         */
+        String name();
+
+        /**
+         * Writes a ^ b to dest; dest may be a or b.
+         */
+        void xor(byte[] a, int aOffset, byte[] b, int bOffset, byte[] dest, int destOffset, int length);
+
+        /**
+         * XORs whole words of the counter keystream (see {@link PermutationTable#xorCounterKeystream})
+         * into data, as little endian longs.
+         * @param base The mixed seed
+         * @param index The keystream word that corresponds to data[offset]
+         * @param data The bytes to XOR in place
+         * @param offset The first byte to process
+         * @param words The number of 8-byte words available
+         * @return The number of words processed, from the start
+         */
+        int xorCounterWords(long base, long index, byte[] data, int offset, int words);
+
+        /**
+         * Like {@link LsbSteganography#embedFirstPlane}.
+         * @return The number of payload bytes embedded, from the start
+         */
+        int embedFirstPlane(byte[] carrier, byte[] data, int numBytes);
+
+        /**
+         * Evaluates GF(257) polynomial blocks [desde, hasta) for every shadow, one block per lane,
+         * and writes the value of shadow s for block j to valores[s][j]. Blocks where some value
+         * is 256, and the ones left over after the last full vector, are not adjusted: their
+         * indexes go to pendientes for {@link PolynomialEvaluator#evaluateAvoiding256}.
+         * @param coeficientes The permuted secret, k coefficients per block
+         * @param k The number of coefficients (at most 16)
+         * @param potencias potencias[s][i] = (s + 1)^i mod 257
+         * @param pendientes Receives the pending blocks; room for hasta - desde
+         * @return The number of pending blocks
+         */
+        int evaluateGf257(byte[] coeficientes, int k, int[][] potencias, int desde, int hasta, byte[][] valores, int[] pendientes);
+    }
+
+    /**
+     * Returns the vector kernels, or null to use the scalar code.
+     * @return The kernels, or null
+     */
+    public static Kernels kernels() {
+        return enabled ? VECTOR : null;
+    }
+
+    /**
+     * @return Whether the vector kernels could be loaded
+     */
+    public static boolean isAvailable() {
+        return VECTOR != null;
+    }
+
+    /**
+     * Switches between the vector kernels and the scalar code, for A/B comparisons.
+     * @param on Whether to use the vector kernels
+     * @return Whether they are in use; false if they are not available
+     */
+    public static boolean setEnabled(boolean on) {
+        enabled = on && VECTOR != null;
+        return enabled;
+    }
+
+    /**
+     * @return The backend in use, for logs and benchmark reports
+     */
+    public static String describe() {
+        Kernels k = kernels();
+        return k == null ? "scalar" : k.name();
+    }
+
+    private static Kernels cargar() {
+        try {
+            return (Kernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Not compiled in, or the incubator module was not added to the JVM
+            return null;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Distributes a secret image into n shadow images reading the secret and the carriers
+ * in chunks of polynomials and appending each chunk to the n output files, so that
+ * neither the secret nor the carriers are ever held in memory as a whole.
+ * The shadows are byte-for-byte the same as the ones produced by {@link SecretDistributor}.
+ * Streaming needs every payload byte to fit in the first bit plane of its carrier
+ * (8 carrier bytes per polynomial), which holds for k >= 8 with carriers of the secret size.
+ */
+public class StreamingDistributor {
+    public static final int DEFAULT_CHUNK = 1 << 16;
+
+    private final String secretPath;
+    private final int k;
+    private final int n;
+    private final String dir;
+    private final int polinomiosPorChunk;
+    private final ShadowMetadata metadata = new ShadowMetadata();
+    private String outputDir = "resources/sombras";
+    private PhaseStats stats = new PhaseStats("distribute");
+    private long polinomiosAjustados;
+    private long unidadesDecrementadas;
+
+    /**
+     * Constructs a StreamingDistributor.
+     * @param secretPath The path of the secret BMP image
+     * @param k The threshold for recovery
+     * @param n The number of shares to create
+     * @param dir The directory containing the carrier images
+     * @param polinomiosPorChunk The number of polynomials processed per chunk
+     */
+    public StreamingDistributor(String secretPath, int k, int n, String dir, int polinomiosPorChunk) {
+        if (k < 2 || k > 10) {
+            throw new IllegalArgumentException("El valor de k debe estar entre 2 y 10.");
+        }
+        if (n < 2) {
+            throw new IllegalArgumentException("El valor de n debe ser al menos 2.");
+        }
+        if (k > n) {
+            throw new IllegalArgumentException("El valor de k debe ser menor o igual a n.");
+        }
+        if (polinomiosPorChunk < 1) {
+            throw new IllegalArgumentException("El tamaño de chunk debe ser al menos 1.");
+        }
+        this.secretPath = secretPath;
+        this.k = k;
+        this.n = n;
+        this.dir = dir;
+        this.polinomiosPorChunk = polinomiosPorChunk;
+    }
+
+    /**
+     * Sets the directory where the shadows are saved (resources/sombras by default).
+     * @param outputDir The output directory, which must exist
+     */
+    public void setOutputDir(String outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Sets the version of the permutation table used to permute the secret.
+     * @param version The permutation table version
+     */
+    public void setPermutationVersion(int version) {
+        metadata.setPermutationVersion(version);
+    }
+
+    /**
+     * Sets the field the polynomials are evaluated over, which is recorded in the shadows.
+     * Over GF(2^8) no coefficient needs to be adjusted and the secret is recovered exactly.
+     * @param field {@link PolynomialEvaluator#FIELD_GF257} (the default) or {@link PolynomialEvaluator#FIELD_GF256}
+     */
+    public void setField(int field) {
+        metadata.setField(field);
+    }
+
+    /**
+     * Records a sharing session id and the digest of the permuted secret in the shadows.
+     * The digest is accumulated chunk by chunk and the headers are rewritten at the end.
+     * @param sessionId The session id, or 0 for no integrity check
+     */
+    public void setSessionId(long sessionId) {
+        metadata.setSessionId(sessionId);
+    }
+
+    /**
+     * Records the phases and counters of the distribution in the given stats.
+     * Phases are timed once per chunk.
+     * @param stats The stats to record into
+     */
+    public void setStats(PhaseStats stats) {
+        this.stats = stats;
+    }
+
+    public PhaseStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns how many polynomials of the last distribution had their coefficients
+     * lowered because some shadow value was 256.
+     * @return The number of adjusted polynomials
+     */
+    public long getAdjustedPolynomials() {
+        return polinomiosAjustados;
+    }
+
+    /**
+     * Returns the total amount subtracted from the coefficients in the last distribution.
+     * @return The sum of all decrements
+     */
+    public long getDecrementedUnits() {
+        return unidadesDecrementadas;
+    }
+
+    /**
+     * Permutes the secret with the given seed and distributes it into n shadow images,
+     * one chunk at a time.
+     * @param seed The seed for permutation
+     * @throws Exception If there is an error during distribution
+     */
+    @SuppressWarnings("try")
+    public void distribute(short seed) throws Exception {
+        File carpeta = new File(dir);
+        File[] archivos = carpeta.listFiles((f, name) -> name.toLowerCase().endsWith(".bmp"));
+        if (archivos == null || archivos.length < n) {
+            throw new IllegalArgumentException("No hay suficientes imágenes BMP en el directorio: " + dir);
+        }
+
+        byte[] secretHeader = BmpImage.readHeader(secretPath);
+        BmpImage secretInfo = new BmpImage(secretHeader, null);
+        int secretWidth = secretInfo.getWidth();
+        int secretHeight = secretInfo.getHeight();
+
+        FileChannel secreto = null;
+        FileChannel[] salidas = new FileChannel[n];
+        Portadora[] portadoras = new Portadora[n];
+        try {
+            secreto = FileChannel.open(Paths.get(secretPath), StandardOpenOption.READ);
+            long secretLength = secreto.size() - secretHeader.length;
+            if (secretLength % k != 0) {
+                throw new IllegalArgumentException("La cantidad de bytes del secreto no es divisible por k. " +
+                        "No se pueden formar polinomios completos.");
+            }
+            int cantidadPolinomios = (int) (secretLength / k);
+
+            for (int i = 0; i < n; i++) {
+                portadoras[i] = new Portadora(archivos[i], secretWidth, secretHeight, secretInfo.getBitsPerPixel());
+                if ((long) cantidadPolinomios * 8 > portadoras[i].length) {
+                    throw new IllegalArgumentException("La portadora " + archivos[i].getName() +
+                            " no tiene capacidad para ocultar la sombra en el primer bit; use el modo sin -stream.");
+                }
+                salidas[i] = FileChannel.open(Paths.get(outputDir, String.format("sombra%d.bmp", i + 1)),
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                writeFully(salidas[i], ByteBuffer.wrap(cabecera(secretHeader, seed, i + 1, cantidadPolinomios)));
+            }
+            long digest = 0;
+
+            PolynomialEvaluator evaluador = new PolynomialEvaluator(k, n, metadata.getField());
+            boolean legacy = metadata.getPermutationVersion() == PermutationTable.VERSION_LEGACY;
+            PermutationTable.LegacyGenerator legacyGenerator = new PermutationTable.LegacyGenerator(seed & 0xFFFF);
+            byte[] secretChunk = new byte[polinomiosPorChunk * k];
+            byte[] tabla = legacy ? new byte[polinomiosPorChunk * k] : null;
+            byte[][] valoresAOcultar = new byte[n][polinomiosPorChunk];
+            byte[] carrierChunk = new byte[polinomiosPorChunk * 8];
+
+            for (int desde = 0; desde < cantidadPolinomios; desde += polinomiosPorChunk) {
+                int cantidad = Math.min(polinomiosPorChunk, cantidadPolinomios - desde);
+                int secretBytes = cantidad * k;
+                try (PhaseStats.Timer t = stats.start("readSecret")) {
+                    readFully(secreto, ByteBuffer.wrap(secretChunk, 0, secretBytes), secretHeader.length + (long) desde * k);
+                }
+                try (PhaseStats.Timer t = stats.start("permute")) {
+                    if (legacy) {
+                        legacyGenerator.nextBytes(tabla, 0, secretBytes);
+                        Simd.Kernels simd = Simd.kernels();
+                        if (simd != null) {
+                            simd.xor(secretChunk, 0, tabla, 0, secretChunk, 0, secretBytes);
+                        } else {
+                            for (int b = 0; b < secretBytes; b++) {
+                                secretChunk[b] ^= tabla[b];
+                            }
+                        }
+                    } else {
+                        PermutationTable.xorCounterKeystream(seed & 0xFFFF, (long) desde * k, secretChunk, 0, secretBytes);
+                    }
+                }
+
+                try (PhaseStats.Timer t = stats.start("evaluate")) {
+                    evaluador.evaluateBlocks(secretChunk, 0, cantidad, valoresAOcultar);
+                }
+                if (metadata.hasIntegrity()) {
+                    try (PhaseStats.Timer t = stats.start("digest")) {
+                        for (int j = 0; j < cantidad; j++) {
+                            digest ^= ShadowDigest.blockHash(desde + j, secretChunk, j * k, k);
+                        }
+                    }
+                }
+
+                for (int i = 0; i < n; i++) {
+                    int carrierBytes = cantidad * 8;
+                    try (PhaseStats.Timer t = stats.start("readCarriers")) {
+                        portadoras[i].read((long) desde * 8, carrierChunk, carrierBytes);
+                    }
+                    try (PhaseStats.Timer t = stats.start("embed")) {
+                        LsbSteganography.embedFirstPlane(carrierChunk, valoresAOcultar[i], cantidad);
+                    }
+                    try (PhaseStats.Timer t = stats.start("save")) {
+                        writeFully(salidas[i], ByteBuffer.wrap(carrierChunk, 0, carrierBytes));
+                    }
+                }
+            }
+
+            polinomiosAjustados = evaluador.getAdjustedBlocks();
+            unidadesDecrementadas = evaluador.getDecrementedUnits();
+            stats.count("polynomials", cantidadPolinomios);
+            stats.count("shadows", n);
+            stats.count("adjustedPolynomials", polinomiosAjustados);
+            stats.count("decrementedUnits", unidadesDecrementadas);
+            stats.count("embeddedBytes", (long) n * cantidadPolinomios);
+
+            // Copy the rest of each carrier unchanged
+            try (PhaseStats.Timer t = stats.start("copyCarrierTail")) {
+                for (int i = 0; i < n; i++) {
+                    for (long pos = (long) cantidadPolinomios * 8; pos < portadoras[i].length; pos += carrierChunk.length) {
+                        int len = (int) Math.min(carrierChunk.length, portadoras[i].length - pos);
+                        portadoras[i].read(pos, carrierChunk, len);
+                        writeFully(salidas[i], ByteBuffer.wrap(carrierChunk, 0, len));
+                    }
+                }
+            }
+
+            // The digest is only known now; the header keeps its length, so it is rewritten in place
+            if (metadata.hasIntegrity()) {
+                metadata.setDigest(digest);
+                for (int i = 0; i < n; i++) {
+                    salidas[i].position(0);
+                    writeFully(salidas[i], ByteBuffer.wrap(cabecera(secretHeader, seed, i + 1, cantidadPolinomios)));
+                }
+            }
+        } finally {
+            if (secreto != null) {
+                secreto.close();
+            }
+            for (int i = 0; i < n; i++) {
+                if (portadoras[i] != null) {
+                    portadoras[i].close();
+                }
+                if (salidas[i] != null) {
+                    salidas[i].close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the header of one shadow: the secret header with the metadata, the seed,
+     * the shadow number and the number of polynomials.
+     */
+    private byte[] cabecera(byte[] secretHeader, short seed, int sombraId, int cantidadPolinomios) {
+        BmpImage header = new BmpImage(metadata.applyTo(secretHeader).clone(), null);
+        header.setReservedBytes(6, seed);
+        header.setReservedBytes(8, (short) sombraId);
+        header.setAmountOfBytesToEmbed(34, cantidadPolinomios);
+        return header.getHeader();
+    }
+
+    /**
+     * Chunked access to the pixel data of a carrier, as {@link SecretDistributor} would use it:
+     * the whole pixel data, or for k=8 the central crop to the secret size.
+     */
+    private class Portadora implements AutoCloseable {
+        private final FileChannel channel;
+        private final long dataOffset;
+        private final boolean crop;
+        private final int sourceRowSize;
+        private final int targetRowSize;
+        private final int sourceHeight;
+        private final int targetWidth;     // in bytes
+        private final int targetHeight;
+        private final int startX;          // in bytes
+        private final int startY;
+        private final long length;
+
+        Portadora(File archivo, int secretWidth, int secretHeight, int bitsPerPixel) throws IOException {
+            byte[] header = BmpImage.readHeader(archivo.getAbsolutePath());
+            BmpImage info = new BmpImage(header, null);
+            int width = info.getWidth();
+            int height = info.getHeight();
+            if (width < secretWidth || height < secretHeight) {
+                throw new IllegalArgumentException(String.format(
+                        "La imagen portadora %s es más pequeña (%dx%d) que la imagen secreta (%dx%d).",
+                        archivo.getName(), width, height, secretWidth, secretHeight));
+            }
+            if (info.getBitsPerPixel() != bitsPerPixel) {
+                throw new IllegalArgumentException(String.format(
+                        "La imagen portadora %s es de %d bits por píxel y la imagen secreta de %d.",
+                        archivo.getName(), info.getBitsPerPixel(), bitsPerPixel));
+            }
+            int bytesPerPixel = bitsPerPixel / 8;
+            this.channel = FileChannel.open(archivo.toPath(), StandardOpenOption.READ);
+            this.dataOffset = header.length;
+            this.crop = k == 8 && (width != secretWidth || height != secretHeight);
+            this.sourceRowSize = BmpImage.rowSize(width, bitsPerPixel);
+            this.targetRowSize = BmpImage.rowSize(secretWidth, bitsPerPixel);
+            this.sourceHeight = height;
+            this.targetWidth = secretWidth * bytesPerPixel;
+            this.targetHeight = secretHeight;
+            this.startX = (width - secretWidth) / 2 * bytesPerPixel;
+            this.startY = (height - secretHeight) / 2;
+            this.length = crop ? (long) targetRowSize * secretHeight : channel.size() - dataOffset;
+        }
+
+        /**
+         * Reads len bytes of the (possibly cropped) pixel data starting at pos.
+         */
+        void read(long pos, byte[] dest, int len) throws IOException {
+            if (!crop) {
+                readFully(channel, ByteBuffer.wrap(dest, 0, len), dataOffset + pos);
+                return;
+            }
+            // Same layout as BmpImage.cropToSize, one read per row segment
+            int copiados = 0;
+            while (copiados < len) {
+                long p = pos + copiados;
+                int targetRow = (int) (p / targetRowSize);
+                int column = (int) (p % targetRowSize);
+                int segment = Math.min(len - copiados, targetRowSize - column);
+                int pixels = Math.max(0, Math.min(segment, targetWidth - column));
+                if (pixels > 0) {
+                    int sourceRow = sourceHeight - 1 - (startY + (targetHeight - 1 - targetRow));
+                    long source = dataOffset + (long) sourceRow * sourceRowSize + startX + column;
+                    readFully(channel, ByteBuffer.wrap(dest, copiados, pixels), source);
+                }
+                // Row padding is zero
+                for (int b = copiados + pixels; b < copiados + segment; b++) {
+                    dest[b] = 0;
+                }
+                copiados += segment;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Archivo BMP truncado");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,25 +13,65 @@ public class VisualSSS {
     public static byte[] permuteArray(short seed, byte[] array) {
         // Generate the random image R using the seed
         PermutationTable table = new PermutationTable(seed & 0xFFFF, array.length);
+        byte[] r = table.getTable();
         byte[] toReturn = new byte[array.length];
 
         // Perform XOR operation between Q and R to recover O'
+        Simd.Kernels simd = Simd.kernels();
+        if (simd != null) {
+            simd.xor(array, 0, r, 0, toReturn, 0, array.length);
+            return toReturn;
+        }
         for (int i = 0; i < array.length; i++) {
-            toReturn[i] = (byte) (array[i] ^ table.getAt(i));
+            toReturn[i] = (byte) (array[i] ^ r[i]);
         }
 
         return toReturn;
     }
 
+    /**
+     * XORs the array with the permutation table of the given version. The counter table
+     * is generated and applied in chunks across the given number of threads.
+     */
+    public static byte[] permuteArray(short seed, byte[] array, int version, int threads) throws Exception {
+        PermutationTable.checkVersion(version);
+        if (version == PermutationTable.VERSION_LEGACY) {
+            return permuteArray(seed, array);
+        }
+        byte[] toReturn = array.clone();
+        int words = (array.length + 7) / 8;
+        try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+            executor.forEachRange(words, (desde, hasta) -> {
+                int inicio = desde * 8;
+                int fin = Math.min(array.length, hasta * 8);
+                PermutationTable.xorCounterKeystream(seed & 0xFFFF, inicio, toReturn, inicio, fin - inicio);
+            });
+        }
+        return toReturn;
+    }
+
     /**
      * Generates a random seed for permutation.
      */
-    private static short generateSeed() {
+    static short generateSeed() {
         return (short) (Math.random() * 65536);
     }
 
 
     public static void compararBMPs(String originalPath, String recuperadoPath) throws Exception {
+        compararBMPs(originalPath, recuperadoPath, false);
+    }
+
+    /**
+     * Compares the pixel data of two BMP images. The summary mode skips over equal runs with
+     * Arrays.mismatch and prints only the total and the first difference, which is much faster
+     * than listing every differing byte on large images.
+     * @param originalPath The original image
+     * @param recuperadoPath The recovered image
+     * @param soloResumen Whether to print only the summary
+     * @return The number of differing bytes, or -1 if the sizes differ
+     */
+    public static long compararBMPs(String originalPath, String recuperadoPath, boolean soloResumen) throws Exception {
         BmpImage original = new BmpImage(originalPath);
         BmpImage recuperado = new BmpImage(recuperadoPath);
 
@@ -38,45 +80,103 @@ public class VisualSSS {
 
         if (a.length != b.length) {
             System.out.println("❌ Las imágenes tienen diferente cantidad de bytes: " + a.length + " vs " + b.length);
-            return;
+            return -1;
         }
 
-        int errores = 0;
-        for (int i = 0; i < a.length; i++) {
-            if (a[i] != b[i]) {
-                errores++;
+        long errores = 0;
+        int primera = -1;
+        int i = 0;
+        while (i < a.length) {
+            int diferencia = Arrays.mismatch(a, i, a.length, b, i, b.length);
+            if (diferencia < 0) {
+                break;
+            }
+            i += diferencia;
+            if (primera < 0) {
+                primera = i;
+            }
+            errores++;
+            if (!soloResumen) {
                 System.out.printf("Byte %d: original = %d, recuperado = %d%n", i, Byte.toUnsignedInt(a[i]), Byte.toUnsignedInt(b[i]));
             }
+            i++;
         }
         System.out.println("Total de diferencias: " + errores + " de " + a.length + " píxeles (" + (100.0 * errores / a.length) + "%)");
 
         if (errores == 0) {
             System.out.println("✅ ¡Las imágenes son idénticas!");
+        } else if (soloResumen) {
+            System.out.printf("Primera diferencia en el byte %d: original = %d, recuperado = %d%n",
+                    primera, Byte.toUnsignedInt(a[primera]), Byte.toUnsignedInt(b[primera]));
         }
+        return errores;
     }
+
     /**
      * Main entry point for the application.
      */
+    @SuppressWarnings("try")
     public static void main(String[] args) throws Exception {
+        Map<String, String> params = parseArguments(args);
+        if (params.containsKey("server")) {
+            iniciarServidor(params);
+            return;
+        }
+        if (params.containsKey("compare")) {
+            compararBMPs(params.get("compare"), params.get("compareWith"), params.containsKey("summary"));
+            return;
+        }
         if (args.length < 4) {
             printUsageAndExit("Error: argumentos insuficientes.");
         }
-        Map<String, String> params = parseArguments(args);
         String mode = params.get("mode");
+        if (mode == null) {
+            printUsageAndExit("Error: debe indicar el modo -d o -r.");
+        }
         String secret = params.get("secret");
         int k = parseInt(params.get("k"), "k");
         int n = params.containsKey("n") ? parseInt(params.get("n"), "n") : -1;
         String dir = params.getOrDefault("dir", ".");
-        if (!secret.endsWith(".bmp")) {
+        int threads = params.containsKey("threads") ? parseInt(params.get("threads"), "threads") : 1;
+        int permutationVersion = parsePermutationVersion(params.getOrDefault("perm", "counter"));
+        int field = parseField(params.getOrDefault("field", "gf257"));
+        boolean contenedores = parseFormat(params.getOrDefault("format", "bmp"));
+        // Every incompatible option is rejected here, before any old shadow is deleted
+        if (params.containsKey("compress") && !contenedores) {
+            printUsageAndExit("Error: -compress solo se puede usar con -format raw.");
+        }
+        if (params.containsKey("stream") && contenedores) {
+            printUsageAndExit("Error: -stream oculta las sombras en portadoras; no se puede usar con -format raw.");
+        }
+        if (params.containsKey("previous") && contenedores) {
+            printUsageAndExit("Error: -previous solo actualiza sombras BMP; no se puede usar con -format raw.");
+        }
+        if (params.containsKey("batch") && (params.containsKey("stream") || params.containsKey("stats") || params.containsKey("previous"))) {
+            printUsageAndExit("Error: -batch no se puede usar con -stream, -stats ni -previous.");
+        }
+        if (threads < 1) {
+            printUsageAndExit("Error: el parámetro -threads debe ser al menos 1.");
+        }
+        if (mode.equals("d") && params.containsKey("batch")) {
+            distribuirLote(params.get("batch"), k, n, dir, params.getOrDefault("out", "resources/sombras"), threads, permutationVersion,
+                    field, contenedores, params.containsKey("compress"), parseCacheBudget(params.get("cachemb")));
+            return;
+        }
+        if (secret == null || !secret.endsWith(".bmp")) {
             printUsageAndExit("Error: el archivo secreto debe tener extensión .bmp");
         }
         if (mode.equals("d")) {
             if (!new java.io.File(secret).exists()) {
                 printUsageAndExit("Error: el archivo secreto no existe");
             }
+            if (params.containsKey("previous")) {
+                actualizarSombras(params, secret, k, n, threads);
+                return;
+            }
             File sombrasDir = new File("resources/sombras");
             if (sombrasDir.exists() && sombrasDir.isDirectory()) {
-                java.io.File[] oldShadows = sombrasDir.listFiles((d, name) -> name.startsWith("sombra") && name.endsWith(".bmp"));
+                java.io.File[] oldShadows = sombrasDir.listFiles((d, name) -> name.startsWith("sombra")
+                        && (name.endsWith(".bmp") || ShareContainer.isContainer(name)));
                 if (oldShadows != null) {
                     for (java.io.File f : oldShadows) {
                         f.delete();
@@ -84,9 +184,26 @@ public class VisualSSS {
                 }
             }
             short seed = generateSeed();
-            BmpImage secret_image = new BmpImage(secret);
+            PhaseStats stats = new PhaseStats("distribute");
+            if (params.containsKey("stream")) {
+                StreamingDistributor streaming = new StreamingDistributor(secret, k, n, dir, StreamingDistributor.DEFAULT_CHUNK);
+                streaming.setPermutationVersion(permutationVersion);
+                streaming.setField(field);
+                streaming.setSessionId(ShadowDigest.newSessionId());
+                streaming.setStats(stats);
+                streaming.distribute(seed);
+                imprimirStats(params, stats);
+                return;
+            }
+            BmpImage secret_image;
+            try (PhaseStats.Timer t = stats.start("loadSecret")) {
+                secret_image = new BmpImage(secret);
+            }
             byte[] originalSecret = secret_image.getPixelData();
-            byte[] permutedSecret = permuteArray(seed, originalSecret);
+            byte[] permutedSecret;
+            try (PhaseStats.Timer t = stats.start("permute")) {
+                permutedSecret = permuteArray(seed, originalSecret, permutationVersion, threads);
+            }
             SecretDistributor distributor = new SecretDistributor(
                 permutedSecret, 
                 k, 
@@ -96,29 +213,185 @@ public class VisualSSS {
                 secret_image,
                     dir
             );
-            distributor.distribute(seed);
+            distributor.setPermutationVersion(permutationVersion);
+            distributor.setField(field);
+            distributor.setSessionId(ShadowDigest.newSessionId());
+            distributor.setContainerOutput(contenedores, params.containsKey("compress"));
+            distributor.setStats(stats);
+            distributor.distribute(seed, threads);
+            imprimirStats(params, stats);
         } else if (mode.equals("r")) {
-            File carpeta = new File(dir);
-            File[] archivos = carpeta.listFiles((d, name) -> name.endsWith(".bmp"));
-            if (archivos == null || archivos.length == 0) {
+            PhaseStats stats = new PhaseStats("recover");
+            // Headers only; the index is reused by the recovery, which reads just the shadows it selects
+            ShadowIndex sombras;
+            try (PhaseStats.Timer t = stats.start("scanShadows")) {
+                sombras = ShadowIndex.scan(dir);
+            }
+            if (sombras.size() == 0) {
                 printUsageAndExit("No se encontraron sombras en el directorio: " + dir);
             }
-            if (archivos.length < n) {
-                printUsageAndExit("No hay suficientes sombras en el directorio: se requieren al menos " + n + ", pero solo hay " + archivos.length);
+            if (sombras.size() < n) {
+                printUsageAndExit("No hay suficientes sombras en el directorio: se requieren al menos " + n + ", pero solo hay " + sombras.size());
             }
-            SecretRecoverer recoverer = new SecretRecoverer(k, n, dir);
-            byte[] permutedSecret = recoverer.recover();
-            short seed = recoverer.getSeed();
-            byte[] originalSecret = permuteArray(seed, permutedSecret);
-            BmpImage sombra = new BmpImage(archivos[0].getAbsolutePath());
-            byte[] header = sombra.getHeader();
-            BmpImage outputImage = new BmpImage(header, originalSecret);;
-            outputImage.save(secret);
+            if (params.containsKey("region")) {
+                recuperarRegion(secret, k, n, sombras, params.get("region"), stats);
+            } else {
+                List<String> defectuosas = recuperar(secret, k, n, sombras, threads, params.containsKey("robust"), stats);
+                if (!defectuosas.isEmpty()) {
+                    System.out.println("Sombras con errores (corregidos): " + defectuosas);
+                }
+            }
+            imprimirStats(params, stats);
         } else {
             printUsageAndExit("Error: modo inválido, debe ser -d o -r.");
         }
     }
 
+    /**
+     * Runs the localhost distribute/recover server until the process is stopped.
+     */
+    private static void iniciarServidor(Map<String, String> params) throws Exception {
+        int port = parseInt(params.get("server"), "server");
+        int workers = params.containsKey("threads") ? parseInt(params.get("threads"), "threads") : Runtime.getRuntime().availableProcessors();
+        int queue = params.containsKey("queue") ? parseInt(params.get("queue"), "queue") : SharingServer.DEFAULT_QUEUE;
+        File root = new File(params.getOrDefault("root", "."));
+        if (!root.isDirectory()) {
+            printUsageAndExit("Error: el directorio raíz no existe: " + root);
+        }
+        SharingServer server = new SharingServer(port, workers, queue, new CarrierCache(parseCacheBudget(params.get("cachemb"))), root);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        System.out.printf("Servidor escuchando en http://127.0.0.1:%d (%d workers, cola de %d, raíz %s)%n", server.getPort(), workers, queue,
+                root.getCanonicalPath());
+        System.out.printf("Token (header %s): %s%n", SharingServer.TOKEN_HEADER, server.getToken());
+    }
+
+    /**
+     * Recovers the secret from the shadows in dir and saves it as a plain BMP.
+     * @param secret The path of the recovered image
+     * @param k The threshold for recovery
+     * @param n The number of shares
+     * @param sombras The index of the directory containing the shadow images
+     * @param threads The number of worker threads
+     * @param corregirErrores Whether to use every shadow and correct errors (see {@link SecretRecoverer#setErrorCorrection(boolean)})
+     * @param stats The stats to record the phases into
+     * @return The shadows found to have errors, empty without error correction
+     * @throws Exception If there is an error during recovery
+     */
+    @SuppressWarnings("try")
+    static List<String> recuperar(String secret, int k, int n, ShadowIndex sombras, int threads, boolean corregirErrores, PhaseStats stats) throws Exception {
+        SecretRecoverer recoverer = new SecretRecoverer(k, n, sombras.getDir());
+        recoverer.setIndex(sombras);
+        recoverer.setStats(stats);
+        recoverer.setErrorCorrection(corregirErrores);
+        byte[] permutedSecret = recoverer.recover(threads);
+        short seed = recoverer.getSeed();
+        byte[] originalSecret;
+        try (PhaseStats.Timer t = stats.start("permute")) {
+            originalSecret = permuteArray(seed, permutedSecret, recoverer.getPermutationVersion(), threads);
+        }
+        try (PhaseStats.Timer t = stats.start("saveSecret")) {
+            BmpImage outputImage = new BmpImage(recoverer.getSecretHeader(), originalSecret);
+            outputImage.save(secret);
+        }
+        return recoverer.getFaultyShadows();
+    }
+
+    /**
+     * Patches the shadows in -out (resources/sombras by default) after an edit of the secret,
+     * rewriting only the blocks that differ from the -previous secret.
+     */
+    @SuppressWarnings("try")
+    private static void actualizarSombras(Map<String, String> params, String secret, int k, int n, int threads) throws Exception {
+        String previous = params.get("previous");
+        if (!new File(previous).exists()) {
+            printUsageAndExit("Error: el secreto anterior no existe");
+        }
+        PhaseStats stats = new PhaseStats("update");
+        BmpImage anterior;
+        BmpImage nuevo;
+        try (PhaseStats.Timer t = stats.start("loadSecret")) {
+            anterior = new BmpImage(previous);
+            nuevo = new BmpImage(secret);
+        }
+        IncrementalDistributor incremental = new IncrementalDistributor(k, params.getOrDefault("out", "resources/sombras"));
+        incremental.setStats(stats);
+        int cambiados = incremental.update(anterior.getPixelData(), nuevo.getPixelData(), n, threads);
+        System.out.printf("Bloques actualizados: %d de %d%n", cambiados, nuevo.getPixelDataLength() / k);
+        imprimirStats(params, stats);
+    }
+
+    /**
+     * Recovers only the rectangle x,y,width,height of the secret (y = 0 is the top row)
+     * and saves it as a BMP of that size.
+     */
+    @SuppressWarnings("try")
+    private static void recuperarRegion(String secret, int k, int n, ShadowIndex sombras, String region, PhaseStats stats) throws Exception {
+        String[] partes = region.split(",");
+        if (partes.length != 4) {
+            printUsageAndExit("El parámetro -region debe tener la forma x,y,ancho,alto.");
+        }
+        int[] valores = new int[4];
+        for (int i = 0; i < 4; i++) {
+            valores[i] = parseInt(partes[i].trim(), "region");
+        }
+        SecretRecoverer recoverer = new SecretRecoverer(k, n, sombras.getDir());
+        recoverer.setIndex(sombras);
+        recoverer.setStats(stats);
+        BmpImage tile = recoverer.recoverRegion(valores[0], valores[1], valores[2], valores[3]);
+        try (PhaseStats.Timer t = stats.start("saveSecret")) {
+            tile.save(secret);
+        }
+    }
+
+    /**
+     * Prints the JSON summary of the phases and counters when -stats was given.
+     */
+    private static void imprimirStats(Map<String, String> params, PhaseStats stats) {
+        if (params.containsKey("stats")) {
+            System.out.println(stats.toJson());
+        }
+    }
+
+    /**
+     * Distributes every secret of a batch specification (directory, glob or comma separated list),
+     * each into outputBase/secretName, and prints the time taken by each one.
+     */
+    private static void distribuirLote(String spec, int k, int n, String dir, String outputBase, int workers, int permutationVersion,
+                                       int field, boolean contenedores, boolean comprimir, long cacheBytes) throws Exception {
+        List<String> secrets = BatchDistributor.expandSecrets(spec);
+        if (secrets.isEmpty()) {
+            printUsageAndExit("Error: no se encontraron secretos en " + spec);
+        }
+        BatchDistributor batch;
+        try {
+            batch = new BatchDistributor(secrets, k, n, dir, outputBase, workers, permutationVersion);
+        } catch (IllegalArgumentException e) {
+            printUsageAndExit("Error: " + e.getMessage());
+            return;
+        }
+        long inicio = System.nanoTime();
+        CarrierCache cache = new CarrierCache(cacheBytes);
+        batch.setCarrierCache(cache);
+        batch.setField(field);
+        batch.setContainerOutput(contenedores, comprimir);
+        int errores = 0;
+        for (BatchDistributor.Resultado r : batch.run()) {
+            if (r.getError() == null) {
+                System.out.printf("%s -> %s (%d ms)%n", r.getSecret(), r.getOutputDir(), r.getMillis());
+            } else {
+                errores++;
+                System.err.printf("Error en %s (%d ms): %s%n", r.getSecret(), r.getMillis(), r.getError().getMessage());
+            }
+        }
+        System.out.printf("Total: %d secretos en %d ms, %d con errores%n", secrets.size(), (System.nanoTime() - inicio) / 1_000_000, errores);
+        System.out.printf("Cache de portadoras: %d aciertos, %d fallos, %d desalojos, %d/%d KB en uso%n",
+                cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getBytesInUse() / 1024, cache.getMaxBytes() / 1024);
+        if (errores > 0) {
+            System.exit(1);
+        }
+    }
+
     /**
      * Parses command-line arguments into a map.
      */
@@ -148,6 +421,74 @@ public class VisualSSS {
                     if (i + 1 >= args.length) printUsageAndExit("Falta directorio después de -dir.");
                     map.put("dir", args[++i]);
                     break;
+                case "-stream":
+                    map.put("stream", "true");
+                    break;
+                case "-batch":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta directorio, patrón o lista después de -batch.");
+                    map.put("batch", args[++i]);
+                    break;
+                case "-out":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta directorio después de -out.");
+                    map.put("out", args[++i]);
+                    break;
+                case "-field":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta campo después de -field.");
+                    map.put("field", args[++i]);
+                    break;
+                case "-format":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta formato después de -format.");
+                    map.put("format", args[++i]);
+                    break;
+                case "-compress":
+                    map.put("compress", "true");
+                    break;
+                case "-perm":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta versión después de -perm.");
+                    map.put("perm", args[++i]);
+                    break;
+                case "-region":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta x,y,ancho,alto después de -region.");
+                    map.put("region", args[++i]);
+                    break;
+                case "-previous":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta archivo después de -previous.");
+                    map.put("previous", args[++i]);
+                    break;
+                case "-stats":
+                    map.put("stats", "true");
+                    break;
+                case "-compare":
+                    if (i + 2 >= args.length) printUsageAndExit("Faltan las dos imágenes después de -compare.");
+                    map.put("compare", args[++i]);
+                    map.put("compareWith", args[++i]);
+                    break;
+                case "-robust":
+                    map.put("robust", "true");
+                    break;
+                case "-summary":
+                    map.put("summary", "true");
+                    break;
+                case "-server":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta puerto después de -server.");
+                    map.put("server", args[++i]);
+                    break;
+                case "-root":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta directorio después de -root.");
+                    map.put("root", args[++i]);
+                    break;
+                case "-queue":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta número después de -queue.");
+                    map.put("queue", args[++i]);
+                    break;
+                case "-cachemb":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta número después de -cachemb.");
+                    map.put("cachemb", args[++i]);
+                    break;
+                case "-threads":
+                    if (i + 1 >= args.length) printUsageAndExit("Falta número después de -threads.");
+                    map.put("threads", args[++i]);
+                    break;
                 default:
                     printUsageAndExit("Parámetro no reconocido: " + args[i]);
             }
@@ -155,6 +496,66 @@ public class VisualSSS {
         return map;
     }
 
+    /**
+     * Parses the -perm option: "legacy" (java.util.Random table) or "counter" (parallel counter table).
+     */
+    private static int parsePermutationVersion(String value) {
+        switch (value) {
+            case "legacy":
+                return PermutationTable.VERSION_LEGACY;
+            case "counter":
+                return PermutationTable.VERSION_COUNTER;
+            default:
+                printUsageAndExit("El parámetro -perm debe ser legacy o counter.");
+                return -1;
+        }
+    }
+
+    /**
+     * Parses the -field option: "gf257" (original scheme, lossy) or "gf256" (log/antilog tables, exact).
+     */
+    private static int parseField(String value) {
+        switch (value) {
+            case "gf257":
+                return PolynomialEvaluator.FIELD_GF257;
+            case "gf256":
+                return PolynomialEvaluator.FIELD_GF256;
+            default:
+                printUsageAndExit("El parámetro -field debe ser gf257 o gf256.");
+                return -1;
+        }
+    }
+
+    /**
+     * Parses the -format option: "bmp" (shares hidden in carriers) or "raw" (compact {@link ShareContainer} files).
+     * @return Whether to save share containers
+     */
+    private static boolean parseFormat(String value) {
+        switch (value) {
+            case "bmp":
+                return false;
+            case "raw":
+                return true;
+            default:
+                printUsageAndExit("El parámetro -format debe ser bmp o raw.");
+                return false;
+        }
+    }
+
+    /**
+     * Parses the -cachemb option (memory budget of the carrier cache, in megabytes).
+     */
+    private static long parseCacheBudget(String value) {
+        if (value == null) {
+            return CarrierCache.DEFAULT_BUDGET;
+        }
+        int megabytes = parseInt(value, "cachemb");
+        if (megabytes < 0) {
+            printUsageAndExit("El parámetro -cachemb no puede ser negativo.");
+        }
+        return megabytes * 1024L * 1024L;
+    }
+
     /**
      * Parses an integer from a string, printing an error and exiting if invalid.
      */
@@ -173,8 +574,12 @@ public class VisualSSS {
     private static void printUsageAndExit(String message) {
         System.err.println(message);
         System.err.println("Uso:");
-        System.err.println("  Distribuir: visualSSS -d -secret <archivo.bmp> -k <num> -n <num> [-dir <directorio> (OPCIONAL: Default value = directorio actual)]\n");
-        System.err.println("  Recuperar:  visualSSS -r -secret <archivo.bmp> -k <num> -n <num> [-dir <directorio> (OPCIONAL: Default value = directorio actual)]");
+        System.err.println("  Distribuir: visualSSS -d -secret <archivo.bmp> -k <num> -n <num> [-dir <directorio> (OPCIONAL: Default value = directorio actual)] [-threads <num> (OPCIONAL: Default value = 1)] [-stream (OPCIONAL: procesa por bloques sin cargar las imágenes completas)] [-perm legacy|counter (OPCIONAL: Default value = counter)] [-field gf257|gf256 (OPCIONAL: gf256 recupera el secreto exacto, Default value = gf257)] [-format bmp|raw (OPCIONAL: raw guarda solo las sombras, sin portadoras, en sombraN.vss)] [-compress (OPCIONAL: con -format raw, comprime las sombras por bloques)] [-stats (OPCIONAL: imprime tiempos por fase y contadores en JSON)]\n");
+        System.err.println("  Lote:       visualSSS -d -batch <directorio|patrón|a.bmp,b.bmp> -k <num> -n <num> [-dir <directorio>] [-out <directorio> (OPCIONAL: Default value = resources/sombras)] [-threads <num> (OPCIONAL: secretos en paralelo)] [-perm legacy|counter] [-field gf257|gf256] [-format bmp|raw] [-compress] [-cachemb <num> (OPCIONAL: memoria para portadoras, Default value = 256)]\n");
+        System.err.println("  Actualizar: visualSSS -d -secret <nuevo.bmp> -previous <anterior.bmp> -k <num> [-n <num> (OPCIONAL: Default value = mayor número de sombra)] [-out <directorio de sombras> (OPCIONAL: Default value = resources/sombras)] [-threads <num>] [-stats]\n");
+        System.err.println("  Recuperar:  visualSSS -r -secret <archivo.bmp> -k <num> -n <num> [-dir <directorio> (OPCIONAL: Default value = directorio actual)] [-threads <num> (OPCIONAL: Default value = 1)] [-region x,y,ancho,alto (OPCIONAL: recupera solo ese rectángulo)] [-robust (OPCIONAL: usa todas las sombras y corrige las que tengan errores)] [-stats]\n");
+        System.err.println("  Comparar:   visualSSS -compare <original.bmp> <recuperado.bmp> [-summary (OPCIONAL: solo el total y la primera diferencia)]\n");
+        System.err.println("  Servidor:   visualSSS -server <puerto> [-threads <num> (OPCIONAL: trabajos en paralelo, Default value = cantidad de procesadores)] [-queue <num> (OPCIONAL: trabajos en espera, Default value = 16)] [-cachemb <num>] [-root <directorio> (OPCIONAL: directorio de los secretos y sombras, Default value = directorio actual)]");
         System.exit(1);
     }
 }
@@ -0,0 +1,85 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Distributes and recovers a secret through the HTTP server, with every path relative to the root.
+ * Run from the repository root, so that the sample images of resources/imagenesG7 are found.
+ */
+public class SharingServerTest {
+    private static final Path IMAGENES = Paths.get("resources", "imagenesG7");
+
+    @Rule
+    public TemporaryFolder carpeta = new TemporaryFolder();
+
+    private File raiz;
+    private SharingServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        raiz = carpeta.newFolder("raiz");
+        File portadoras = new File(raiz, "portadoras");
+        portadoras.mkdir();
+        try (Stream<Path> imagenes = Files.list(IMAGENES)) {
+            for (Path imagen : (Iterable<Path>) imagenes::iterator) {
+                Files.copy(imagen, portadoras.toPath().resolve(imagen.getFileName()));
+            }
+        }
+        Files.copy(IMAGENES.resolve("Jimssd.bmp"), raiz.toPath().resolve("secreto.bmp"));
+        server = new SharingServer(0, 1, 1, new CarrierCache(), raiz);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void recuperaDesdeLaSalidaRelativa() throws IOException {
+        assertEquals(200, enviar("/distribute?secret=secreto.bmp&k=3&n=5&dir=portadoras&out=out"));
+        assertTrue(new File(raiz, "out").list().length >= 5);
+        assertEquals(200, enviar("/recover?secret=recuperado.bmp&k=3&n=5&dir=out"));
+        // The recovery is lossy, so only the shape of the image is compared
+        BmpImage secreto = new BmpImage(new File(raiz, "secreto.bmp").getPath());
+        BmpImage recuperado = new BmpImage(new File(raiz, "recuperado.bmp").getPath());
+        assertEquals(secreto.getWidth(), recuperado.getWidth());
+        assertEquals(secreto.getHeight(), recuperado.getHeight());
+        assertEquals(secreto.getPixelDataLength(), recuperado.getPixelDataLength());
+    }
+
+    @Test
+    public void rechazaDirFueraDeLaRaiz() throws IOException {
+        String fuera = IMAGENES.toAbsolutePath().toString();
+        assertEquals(400, enviar("/distribute?secret=secreto.bmp&k=3&n=5&dir=" + fuera + "&out=out"));
+        assertEquals(400, enviar("/recover?secret=recuperado.bmp&k=3&n=5&dir=../raiz/../.."));
+    }
+
+    private int enviar(String ruta) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + ruta).openConnection();
+        c.setRequestMethod("POST");
+        c.setRequestProperty(SharingServer.TOKEN_HEADER, server.getToken());
+        int codigo = c.getResponseCode();
+        try (InputStream in = codigo < 400 ? c.getInputStream() : c.getErrorStream()) {
+            if (in != null) {
+                in.readAllBytes();
+            }
+        }
+        return codigo;
+    }
+}
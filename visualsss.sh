@@ -4,6 +4,8 @@
 # Usage:
 #   ./visualsss.sh -d|-r [options]
 #   ./visualsss.sh clean
+#   ./visualsss.sh server [puerto] [-threads <num>] [-queue <num>] [-cachemb <num>] [-root <dir>]
+#   ./visualsss.sh compare <original.bmp> <recuperado.bmp> [-summary]
 #   ./visualsss.sh clean -b   # Clean Java binaries in bin/
 
 set -e
@@ -17,12 +19,28 @@ DEFAULT_OUTPUT="resources/recovered/recuperado.bmp"
 function usage() {
   echo "Uso: $0 -d|-r [opciones]"
   echo "       $0 clean"
+  echo "       $0 server [puerto] [-threads <num>] [-queue <num>] [-cachemb <num>] [-root <dir>]   # Servidor HTTP en localhost [predeterminado: 8080]"
+  echo "       $0 compare <original.bmp> <recuperado.bmp> [-summary]   # Comparar dos imágenes; -summary solo muestra el total y la primera diferencia"
   echo "       $0 clean -b   # Clean Java binaries in bin/"
   echo "Opciones:"
   echo "  -secret <file>   Archivo BMP secreto (entrada para -d, salida para -r)"
   echo "  -k <num>         Umbral k (requerido)"
   echo "  -n <num>         Número de particiones n (requerido para -d, opcional para -r)"
   echo "  -dir <dir>       Directorio para portadoras (-d) o sombras (-r) [predeterminado: $DEFAULT_RESOURCES o $DEFAULT_SHADOWS]"
+  echo "  -threads <num>   Cantidad de threads para distribuir o recuperar [predeterminado: 1]"
+  echo "  -stream          Distribuir por bloques sin cargar las imágenes completas (requiere k >= 8)"
+  echo "  -perm <version>  Tabla de permutación para distribuir: legacy o counter [predeterminado: counter]"
+  echo "  -field <campo>   Campo para distribuir: gf257 o gf256 (sin pérdida) [predeterminado: gf257]"
+  echo "  -format <fmt>    Formato de las sombras al distribuir: bmp (en portadoras) o raw (sombraN.vss, sin portadoras) [predeterminado: bmp]"
+  echo "  -compress        Con -format raw: comprimir las sombras por bloques"
+  echo "  -batch <spec>    Distribuir varios secretos: directorio, patrón (comillas) o lista a.bmp,b.bmp"
+  echo "  -out <dir>       Directorio base de salida para -batch, o de las sombras a actualizar con -previous [predeterminado: $DEFAULT_SHADOWS]"
+  echo "  -cachemb <num>   Memoria para la caché de portadoras en -batch, en MB [predeterminado: 256]"
+  echo "  -previous <file> Con -d: actualizar las sombras de -out reescribiendo solo los bloques que cambiaron respecto de este secreto"
+  echo "  -region x,y,w,h  Con -r: recuperar solo ese rectángulo del secreto (y = 0 es la fila superior)"
+  echo "  -robust          Con -r: usar todas las sombras del directorio y corregir las que tengan errores"
+  echo "  -stats           Imprimir tiempos por fase y contadores en JSON"
+  echo "  -simd            Usar los kernels SIMD de la Vector API (jdk.incubator.vector) si la JVM los tiene"
   echo "  -h               Mostrar este mensaje de ayuda"
   exit 1
 }
@@ -31,11 +49,11 @@ function clean_files() {
   echo "Eliminando archivos de sombras y de salida generados..."
   for dir in "$DEFAULT_RESOURCES" "$DEFAULT_SHADOWS"; do
     if [ -d "$dir" ]; then
-      found=$(find "$dir" -maxdepth 1 -type f -name '*.bmp' 2>/dev/null | wc -l)
+      found=$(find "$dir" -maxdepth 1 -type f \( -name '*.bmp' -o -name '*.vss' \) 2>/dev/null | wc -l)
       if [ "$found" -gt 0 ]; then
         echo "Archivos de sombras encontrados en $dir:"
-        find "$dir" -maxdepth 1 -type f -name '*.bmp'
-        find "$dir" -maxdepth 1 -type f -name '*.bmp' -exec rm {} \;
+        find "$dir" -maxdepth 1 -type f \( -name '*.bmp' -o -name '*.vss' \)
+        find "$dir" -maxdepth 1 -type f \( -name '*.bmp' -o -name '*.vss' \) -exec rm {} \;
         echo "Eliminadas."
       fi
     fi
@@ -65,13 +83,37 @@ fi
 
 if [ "$1" == "-c" ]; then
   echo "Compilando archivos fuente de Java..."
-  COMPILE_CMD="javac -d $BIN_DIR src/VisualSSS.java src/SecretDistributor.java src/SecretRecoverer.java src/LsbSteganography.java src/BmpImage.java src/PermutationTable.java"
+  COMPILE_CMD="javac -d $BIN_DIR src/VisualSSS.java src/SecretDistributor.java src/SecretRecoverer.java src/LsbSteganography.java src/BmpImage.java src/PermutationTable.java src/PolynomialEvaluator.java src/ParallelExecutor.java src/StreamingDistributor.java src/ShadowMetadata.java src/CarrierCache.java src/BatchDistributor.java src/LatencyHistogram.java src/SharingServer.java src/PhaseStats.java src/IncrementalDistributor.java src/ShadowDigest.java src/BerlekampWelch.java src/Gf256.java src/Gf257.java src/Simd.java src/Pipeline.java src/ShareContainer.java src/ShadowIndex.java"
   echo "Corriendo $COMPILE_CMD"
   $COMPILE_CMD
   echo "Compilación completada."
   exit 0
 fi
 
+if [ "$1" == "server" ]; then
+  shift
+  PORT=${1:-8080}
+  shift || true
+  echo "Compilando archivos fuente de Java..."
+  COMPILE_CMD="javac -d $BIN_DIR src/VisualSSS.java src/SecretDistributor.java src/SecretRecoverer.java src/LsbSteganography.java src/BmpImage.java src/PermutationTable.java src/PolynomialEvaluator.java src/ParallelExecutor.java src/StreamingDistributor.java src/ShadowMetadata.java src/CarrierCache.java src/BatchDistributor.java src/LatencyHistogram.java src/SharingServer.java src/PhaseStats.java src/IncrementalDistributor.java src/ShadowDigest.java src/BerlekampWelch.java src/Gf256.java src/Gf257.java src/Simd.java src/Pipeline.java src/ShareContainer.java src/ShadowIndex.java"
+  echo "Corriendo: $COMPILE_CMD"
+  $COMPILE_CMD
+  JAVA_CMD="java -cp $BIN_DIR $MAIN_CLASS -server $PORT $*"
+  echo "Corriendo: $JAVA_CMD"
+  exec $JAVA_CMD
+fi
+
+if [ "$1" == "compare" ]; then
+  shift
+  echo "Compilando archivos fuente de Java..."
+  COMPILE_CMD="javac -d $BIN_DIR src/VisualSSS.java src/SecretDistributor.java src/SecretRecoverer.java src/LsbSteganography.java src/BmpImage.java src/PermutationTable.java src/PolynomialEvaluator.java src/ParallelExecutor.java src/StreamingDistributor.java src/ShadowMetadata.java src/CarrierCache.java src/BatchDistributor.java src/LatencyHistogram.java src/SharingServer.java src/PhaseStats.java src/IncrementalDistributor.java src/ShadowDigest.java src/BerlekampWelch.java src/Gf256.java src/Gf257.java src/Simd.java src/Pipeline.java src/ShareContainer.java src/ShadowIndex.java"
+  echo "Corriendo: $COMPILE_CMD"
+  $COMPILE_CMD
+  JAVA_CMD="java -cp $BIN_DIR $MAIN_CLASS -compare $*"
+  echo "Corriendo: $JAVA_CMD"
+  exec $JAVA_CMD
+fi
+
 if [ $# -lt 1 ]; then
   usage
 fi
@@ -81,6 +123,20 @@ SECRET=""
 K=""
 N=""
 DIR=""
+THREADS=""
+STREAM=""
+PERM=""
+FIELD=""
+BATCH=""
+OUT=""
+CACHEMB=""
+STATS=""
+PREVIOUS=""
+REGION=""
+ROBUST=""
+SIMD=""
+FORMAT=""
+COMPRESS=""
 
 while [[ $# -gt 0 ]]; do
   case "$1" in
@@ -108,6 +164,62 @@ while [[ $# -gt 0 ]]; do
       DIR="$2"
       shift 2
       ;;
+    -threads)
+      THREADS="$2"
+      shift 2
+      ;;
+    -stream)
+      STREAM="-stream"
+      shift
+      ;;
+    -perm)
+      PERM="$2"
+      shift 2
+      ;;
+    -field)
+      FIELD="$2"
+      shift 2
+      ;;
+    -format)
+      FORMAT="$2"
+      shift 2
+      ;;
+    -compress)
+      COMPRESS="-compress"
+      shift
+      ;;
+    -batch)
+      BATCH="$2"
+      shift 2
+      ;;
+    -out)
+      OUT="$2"
+      shift 2
+      ;;
+    -cachemb)
+      CACHEMB="$2"
+      shift 2
+      ;;
+    -stats)
+      STATS="-stats"
+      shift
+      ;;
+    -previous)
+      PREVIOUS="$2"
+      shift 2
+      ;;
+    -region)
+      REGION="$2"
+      shift 2
+      ;;
+    -robust)
+      ROBUST="-robust"
+      shift
+      ;;
+    -simd)
+      SIMD="1"
+      shift
+      ;;
     -h|--help)
       usage
       ;;
@@ -131,7 +243,7 @@ if [ "$MODE" == "-d" ] && [ -z "$N" ]; then
   read -p "Ingrese el número de shares n: " N
 fi
 
-if [ -z "$SECRET" ]; then
+if [ -z "$SECRET" ] && [ -z "$BATCH" ]; then
   if [ "$MODE" == "-d" ]; then
     read -p "Ingrese la dirección al archivo BMP secreto: " SECRET
   else
@@ -146,22 +258,77 @@ fi
 
 if [ "$MODE" == "-d" ]; then
   echo "Compilando archivos fuente de Java..."
-  COMPILE_CMD="javac -d $BIN_DIR src/VisualSSS.java src/SecretDistributor.java src/SecretRecoverer.java src/LsbSteganography.java src/BmpImage.java src/PermutationTable.java"
+  COMPILE_CMD="javac -d $BIN_DIR src/VisualSSS.java src/SecretDistributor.java src/SecretRecoverer.java src/LsbSteganography.java src/BmpImage.java src/PermutationTable.java src/PolynomialEvaluator.java src/ParallelExecutor.java src/StreamingDistributor.java src/ShadowMetadata.java src/CarrierCache.java src/BatchDistributor.java src/LatencyHistogram.java src/SharingServer.java src/PhaseStats.java src/IncrementalDistributor.java src/ShadowDigest.java src/BerlekampWelch.java src/Gf256.java src/Gf257.java src/Simd.java src/Pipeline.java src/ShareContainer.java src/ShadowIndex.java"
   echo "Corriendo: $COMPILE_CMD"
   $COMPILE_CMD
 fi
 
 if [ "$MODE" == "-r" ]; then
   echo "Compilando archivos fuente de Java..."
-  COMPILE_CMD="javac -d $BIN_DIR src/VisualSSS.java src/SecretDistributor.java src/SecretRecoverer.java src/LsbSteganography.java src/BmpImage.java src/PermutationTable.java"
+  COMPILE_CMD="javac -d $BIN_DIR src/VisualSSS.java src/SecretDistributor.java src/SecretRecoverer.java src/LsbSteganography.java src/BmpImage.java src/PermutationTable.java src/PolynomialEvaluator.java src/ParallelExecutor.java src/StreamingDistributor.java src/ShadowMetadata.java src/CarrierCache.java src/BatchDistributor.java src/LatencyHistogram.java src/SharingServer.java src/PhaseStats.java src/IncrementalDistributor.java src/ShadowDigest.java src/BerlekampWelch.java src/Gf256.java src/Gf257.java src/Simd.java src/Pipeline.java src/ShareContainer.java src/ShadowIndex.java"
   echo "Corriendo: $COMPILE_CMD"
   $COMPILE_CMD
 fi
 
+# Optional SIMD kernels: compiled and loaded only when the JDK has the incubator module
+JAVA_OPTS=""
+if [ -n "$SIMD" ]; then
+  if java --list-modules 2>/dev/null | grep -q '^jdk.incubator.vector'; then
+    echo "Compilando los kernels SIMD..."
+    javac --add-modules jdk.incubator.vector -cp $BIN_DIR -d $BIN_DIR src-simd/VectorKernels.java
+    JAVA_OPTS="--add-modules jdk.incubator.vector"
+  else
+    echo "El módulo jdk.incubator.vector no está disponible; se usa el código escalar."
+  fi
+fi
+
 # Build the Java command
-JAVA_CMD="java -cp $BIN_DIR $MAIN_CLASS $MODE -secret $SECRET -k $K"
+if [ -n "$BATCH" ]; then
+  JAVA_CMD="java $JAVA_OPTS -cp $BIN_DIR $MAIN_CLASS $MODE -batch $BATCH -k $K"
+  if [ -n "$OUT" ]; then
+    JAVA_CMD+=" -out $OUT"
+  fi
+  if [ -n "$CACHEMB" ]; then
+    JAVA_CMD+=" -cachemb $CACHEMB"
+  fi
+else
+  JAVA_CMD="java $JAVA_OPTS -cp $BIN_DIR $MAIN_CLASS $MODE -secret $SECRET -k $K"
+  if [ -n "$PREVIOUS" ]; then
+    JAVA_CMD+=" -previous $PREVIOUS"
+    if [ -n "$OUT" ]; then
+      JAVA_CMD+=" -out $OUT"
+    fi
+  fi
+fi
 JAVA_CMD+=" -n $N"
 JAVA_CMD+=" -dir $DIR"
+if [ -n "$THREADS" ]; then
+  JAVA_CMD+=" -threads $THREADS"
+fi
+if [ -n "$REGION" ]; then
+  JAVA_CMD+=" -region $REGION"
+fi
+if [ -n "$ROBUST" ] && [ "$MODE" == "-r" ]; then
+  JAVA_CMD+=" $ROBUST"
+fi
+if [ -n "$STATS" ]; then
+  JAVA_CMD+=" $STATS"
+fi
+if [ -n "$STREAM" ]; then
+  JAVA_CMD+=" $STREAM"
+fi
+if [ -n "$PERM" ] && [ "$MODE" == "-d" ]; then
+  JAVA_CMD+=" -perm $PERM"
+fi
+if [ -n "$FIELD" ] && [ "$MODE" == "-d" ]; then
+  JAVA_CMD+=" -field $FIELD"
+fi
+if [ -n "$FORMAT" ] && [ "$MODE" == "-d" ]; then
+  JAVA_CMD+=" -format $FORMAT"
+fi
+if [ -n "$COMPRESS" ] && [ "$MODE" == "-d" ]; then
+  JAVA_CMD+=" $COMPRESS"
+fi
 
 echo "Corriendo: $JAVA_CMD"
 $JAVA_CMD